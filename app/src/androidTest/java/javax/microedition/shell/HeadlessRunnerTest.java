@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+
+import javax.microedition.lcdui.event.CanvasEvent;
+import javax.microedition.lcdui.event.EventQueue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Drives {@link HeadlessRunner}. The replay needs an installed MIDlet, its directory
+ * is passed as an instrumentation argument, e.g.
+ * {@code -e headlessApp /sdcard/J2ME-Loader/converted/Game}; without it only the script is checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HeadlessRunnerTest {
+
+	private static final String SCRIPT = "# a burst of drags and repeats that the queue would merge\n" +
+			"200 down 10 10\n" +
+			"200 drag 11 10\n" +
+			"200 drag 12 10\n" +
+			"200 drag 13 10\n" +
+			"200 up 13 10\n" +
+			"300 press -5\n" +
+			"300 repeat -5\n" +
+			"300 repeat -5\n" +
+			"300 release -5\n" +
+			"3000 end\n";
+	private static final int SCRIPT_EVENTS = 9;
+
+	@Test
+	public void loadScript() throws IOException {
+		HeadlessRunner runner = new HeadlessRunner(getContext(), "/");
+		runner.loadScript(new StringReader(SCRIPT));
+		assertEquals(SCRIPT_EVENTS + 1, runner.getStepCount());
+	}
+
+	@Test(expected = IOException.class)
+	public void loadInvalidScript() throws IOException {
+		HeadlessRunner runner = new HeadlessRunner(getContext(), "/");
+		runner.loadScript(new StringReader("100 tap 10 10\n"));
+	}
+
+	@Test
+	public void scriptedEventsAreNotMerged() {
+		EventQueue queue = new EventQueue();
+		for (int i = 0; i < 3; i++) {
+			CanvasEvent event = (CanvasEvent) CanvasEvent.getInstance(null, CanvasEvent.POINTER_DRAGGED, 0, i, 0);
+			event.setReplaceable(false);
+			queue.postEvent(event);
+		}
+		assertEquals(0, queue.getCoalescedCount());
+
+		queue.postEvent(CanvasEvent.getInstance(null, CanvasEvent.POINTER_DRAGGED, 0, 3, 0));
+		queue.postEvent(CanvasEvent.getInstance(null, CanvasEvent.POINTER_DRAGGED, 0, 4, 0));
+		assertEquals(1, queue.getCoalescedCount());
+	}
+
+	@Test
+	public void replayDeliversEveryEvent() throws Exception {
+		Bundle arguments = InstrumentationRegistry.getArguments();
+		String appPath = arguments.getString("headlessApp");
+		assumeTrue(appPath != null);
+
+		HeadlessRunner runner = new HeadlessRunner(getContext(), appPath);
+		runner.loadScript(new StringReader(SCRIPT));
+		Properties report = new Properties();
+		report.load(new StringReader(runner.run()));
+
+		int posted = Integer.parseInt(report.getProperty("events"));
+		int dropped = Integer.parseInt(report.getProperty("events_dropped"));
+		assertEquals(SCRIPT_EVENTS, posted + dropped);
+		assertTrue(report.containsKey("events_coalesced"));
+		assertTrue(Integer.parseInt(report.getProperty("frames")) > 0);
+	}
+
+	private static Context getContext() {
+		return InstrumentationRegistry.getInstrumentation().getTargetContext();
+	}
+}
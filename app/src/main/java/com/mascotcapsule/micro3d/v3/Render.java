@@ -36,7 +36,8 @@ import com.mascotcapsule.micro3d.v3.RenderNode.FigureNode;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -70,7 +71,9 @@ class Render {
 	private final Rect clip = new Rect();
 	private final boolean skipSprites = Boolean.getBoolean("micro3d.v3.skipSprites");
 	private boolean backCopied;
-	private final LinkedList<RenderNode> stack = new LinkedList<>();
+	private final ArrayList<RenderNode> stack = new ArrayList<>();
+	private final ArrayList<RenderNode> transparentStack = new ArrayList<>();
+	private final boolean sortNodes = Boolean.getBoolean("micro3d.v3.render.sort");
 	private int flushStep;
 	private Texture[] textures;
 	private final boolean postCopy2D = !Boolean.getBoolean("micro3d.v3.render.no-mix2D3D");
@@ -510,6 +513,7 @@ class Render {
 	synchronized void release() {
 		bindEglContext();
 		stack.clear();
+		transparentStack.clear();
 		if (postCopy2D) {
 			copy2d(false);
 		}
@@ -524,13 +528,16 @@ class Render {
 		}
 		bindEglContext();
 		try {
+			TextureCache.deletePendingTextures();
 			if (!backCopied && preCopy2D) copy2d(true);
+			ArrayList<RenderNode> transparentStack = sortStack();
 			flushStep = 1;
-			for (RenderNode r : stack) {
-				r.run();
+			for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
+				stack.get(i).run();
 			}
 			flushStep = 2;
-			for (RenderNode r : stack) {
+			for (int i = 0, stackSize = transparentStack.size(); i < stackSize; i++) {
+				RenderNode r = transparentStack.get(i);
 				r.run();
 				r.recycle();
 			}
@@ -540,6 +547,7 @@ class Render {
 			glFlush();
 		} finally {
 			stack.clear();
+			transparentStack.clear();
 			releaseEglContext();
 		}
 	}
@@ -1216,13 +1224,13 @@ class Render {
 						layoutCopy.centerX += x;
 						layoutCopy.centerY += y;
 						Texture finalTex = getTexture();
-						stack.add(new RenderNode() {
+						postPrimitivesNode(new RenderNode() {
 							@Override
 							public void run() {
 								renderPrimitives(finalTex, cmd, num, vert,
 										norm, texCoord, col, effectCopy, layoutCopy);
 							}
-						});
+						}, finalTex, cmd, effectCopy, layoutCopy);
 					}
 					break;
 			}
@@ -1268,7 +1276,7 @@ class Render {
 			rn = figure.stack.pop();
 			rn.setData(this, x, y, layout, effect);
 		}
-		rn.textures = textures == null ? null : textures.clone();
+		rn.setTextures(textures == null ? null : textures.clone());
 		stack.add(rn);
 	}
 
@@ -1281,23 +1289,49 @@ class Render {
 		layoutCopy.centerY += y;
 		setTexture(texture);
 		Texture finalTex = getTexture();
-		stack.add(new RenderNode() {
+		postPrimitivesNode(new RenderNode() {
 			@Override
 			public void run() {
 				renderPrimitives(finalTex, command, numPrimitives, vertexCoords,
 						normals, textureCoords, colors, effectCopy, layoutCopy);
 			}
-		});
+		}, finalTex, command, effectCopy, layoutCopy);
+	}
+
+	private void postPrimitivesNode(RenderNode node, Texture texture, int command,
+									Effect3D effect, FigureLayout layout) {
+		int program;
+		switch (command & 0x7000000) {
+			case PRIMITVE_POINT_SPRITES:
+				program = RenderNode.PROGRAM_SPRITE;
+				break;
+			case PRIMITVE_TRIANGLES:
+			case PRIMITVE_QUADS:
+				if ((command & PDATA_COLOR_PER_COMMAND) == 0 && (command & PDATA_TEXURE_COORD) != 0) {
+					program = RenderNode.PROGRAM_TEX;
+					break;
+				}
+				// fall through
+			default:
+				program = RenderNode.PROGRAM_COLOR;
+				texture = null;
+				break;
+		}
+		int blend = command & PATTR_BLEND_SUB;
+		boolean blendEnabled = (effect.isTransparency || (command & ENV_ATTR_SEMI_TRANSPARENT) != 0) && blend != 0;
+		node.setSortKey(program, texture, blendEnabled ? blend >> 4 : 0, layout);
+		stack.add(node);
 	}
 
 	synchronized void drawFigure(Figure figure, int x, int y, FigureLayout layout, Effect3D effect) {
 		bindEglContext();
+		TextureCache.deletePendingTextures();
 		if (!backCopied && preCopy2D) copy2d(true);
 		try {
+			ArrayList<RenderNode> transparentStack = sortStack();
 			flushStep = 1;
 			for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
-				RenderNode r = stack.get(i);
-				r.run();
+				stack.get(i).run();
 			}
 			Texture tex = figure.getTexture();
 			setTexture(tex);
@@ -1306,8 +1340,8 @@ class Render {
 			FloatBuffer normals = figure.getNormalsData();
 			renderFigure(data, x, y, layout, textures, effect, vertices, normals);
 			flushStep = 2;
-			for (int i = 0, stackSize = stack.size(); i < stackSize; i++) {
-				RenderNode r = stack.get(i);
+			for (int i = 0, stackSize = transparentStack.size(); i < stackSize; i++) {
+				RenderNode r = transparentStack.get(i);
 				r.run();
 				r.recycle();
 			}
@@ -1317,10 +1351,32 @@ class Render {
 			glClear(GL_DEPTH_BUFFER_BIT);
 		} finally {
 			stack.clear();
+			transparentStack.clear();
 			releaseEglContext();
 		}
 	}
 
+	/**
+	 * Orders the posted nodes before execution: the opaque pass is grouped
+	 * by program, texture and blend mode to reduce GL state changes,
+	 * the transparent pass is sorted back-to-front.
+	 * Both sorts are stable, so equal nodes keep their submission order.
+	 * Reordering changes which of the coplanar fragments passes the depth test,
+	 * so it is only done when enabled with the {@code micro3d.v3.render.sort} property.
+	 *
+	 * @return the nodes of the transparent pass
+	 */
+	private ArrayList<RenderNode> sortStack() {
+		ArrayList<RenderNode> stack = this.stack;
+		if (!sortNodes || stack.size() < 2) {
+			return stack;
+		}
+		transparentStack.addAll(stack);
+		Collections.sort(stack, RenderNode.STATE_ORDER);
+		Collections.sort(transparentStack, RenderNode.DEPTH_ORDER);
+		return transparentStack;
+	}
+
 	void bindEglContext() {
 		((EGL10) EGLContext.getEGL()).eglMakeCurrent(eglDisplay, eglWindowSurface, eglWindowSurface, eglContext);
 	}
@@ -1331,6 +1387,7 @@ class Render {
 
 	void reset() {
 		stack.clear();
+		transparentStack.clear();
 	}
 
 	void setTexture(Texture texture) {
@@ -19,16 +19,47 @@ package com.mascotcapsule.micro3d.v3;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.Comparator;
 import java.util.Stack;
 
 abstract class RenderNode implements Runnable {
+	static final int PROGRAM_COLOR = 0;
+	static final int PROGRAM_TEX = 1;
+	static final int PROGRAM_SPRITE = 2;
+
+	/** Orders the opaque pass so that nodes sharing program, texture and blend mode run together */
+	static final Comparator<RenderNode> STATE_ORDER = (a, b) -> {
+		if (a.program != b.program) return a.program - b.program;
+		if (a.textureKey != b.textureKey) return a.textureKey < b.textureKey ? -1 : 1;
+		return a.blendMode - b.blendMode;
+	};
+
+	/** Orders the transparent pass from back to front */
+	static final Comparator<RenderNode> DEPTH_ORDER = (a, b) -> Integer.compare(b.depth, a.depth);
+
+	int program;
+	int textureKey;
+	int blendMode;
+	int depth;
+
 	protected void recycle() {}
 
+	final void setSortKey(int program, Texture texture, int blendMode, FigureLayout layout) {
+		this.program = program;
+		this.blendMode = blendMode;
+		this.depth = layout.affine.m23;
+		setTextureKey(texture);
+	}
+
+	final void setTextureKey(Texture texture) {
+		textureKey = texture == null ? 0 : System.identityHashCode(texture);
+	}
+
 	static final class FigureNode extends RenderNode {
 		private final Stack<FigureNode> stack;
 		private Render render;
 		private Effect3D effect;
-		Texture[] textures;
+		private Texture[] textures;
 		private FigureLayout layout;
 		private final FloatBuffer vertices;
 		private final Model data;
@@ -66,6 +97,8 @@ abstract class RenderNode implements Runnable {
 			}
 			this.x = x;
 			this.y = y;
+			setSortKey(data.hasPolyT ? PROGRAM_TEX : PROGRAM_COLOR, null,
+					this.effect.isTransparency ? 1 : 0, this.layout);
 			synchronized (figure) {
 				Utils.fillBuffer(vertices, data.vertices, data.indices);
 				if (normals != null) {
@@ -74,6 +107,11 @@ abstract class RenderNode implements Runnable {
 			}
 		}
 
+		void setTextures(Texture[] textures) {
+			this.textures = textures;
+			setTextureKey(textures == null || textures.length == 0 ? null : textures[0]);
+		}
+
 		@Override
 		public void run() {
 			render.renderFigure(data, x, y, layout, textures, effect, vertices, normals);
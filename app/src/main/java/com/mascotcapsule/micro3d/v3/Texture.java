@@ -23,8 +23,6 @@ import android.graphics.BitmapFactory;
 import android.opengl.GLUtils;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.Arrays;
 
@@ -37,13 +35,11 @@ public class Texture {
 	private static final int BMP_VERSION_CORE = 12;
 	private static int sLastId;
 
-	private final FloatBuffer colorKey =
-			ByteBuffer.allocateDirect(3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+	private final FloatBuffer colorKey;
+	private final TextureCache.Entry data;
 
 	boolean isSphere;
 
-	private Bitmap image;
-	private int mTexId = -2;
 	int width;
 	int height;
 
@@ -52,44 +48,41 @@ public class Texture {
 			throw new NullPointerException();
 		}
 		isSphere = !isForModel;
-		prepare(b);
-		image = BitmapFactory.decodeByteArray(b, 0, b.length);
-		if (image == null) {
-			fix(b);
-			image = BitmapFactory.decodeByteArray(b, 0, b.length);
-		}
-		if (image == null) {
-			throw new RuntimeException("Image data error");
-		}
-		width = image.getWidth();
-		height = image.getHeight();
+		data = TextureCache.obtain(b);
+		colorKey = data.colorKey.duplicate();
+		width = data.width;
+		height = data.height;
 	}
 
 	public Texture(String name, boolean isForModel) throws IOException {
 		this(getData(name), isForModel);
 	}
 
+	/**
+	 * Does nothing, MIDlets dispose textures that are still set on a figure or effect
+	 * and keep using them. The cache entry is released when the texture is collected.
+	 */
 	public final void dispose() {
-//		synchronized (Render.getRender()) {
-//			Render.getRender().bindEglContext();
-//			if (glIsTexture(mTexId)) {
-//				glDeleteTextures(1, new int[]{mTexId}, 0);
-//				mTexId = -1;
-//			}
-//			Render.getRender().releaseEglContext();
-//		}
 	}
 
 	int getId() {
-		if (mTexId == -1) throw new IllegalStateException("Already disposed!!!");
-		if (glIsTexture(mTexId)) {
-			return mTexId;
+		return data.getId();
+	}
+
+	static Bitmap decode(byte[] b, FloatBuffer colorKey) {
+		prepare(b, colorKey);
+		Bitmap image = BitmapFactory.decodeByteArray(b, 0, b.length);
+		if (image == null) {
+			fix(b);
+			image = BitmapFactory.decodeByteArray(b, 0, b.length);
+		}
+		if (image == null) {
+			throw new RuntimeException("Image data error");
 		}
-		mTexId = loadTexture(image);
-		return mTexId;
+		return image;
 	}
 
-	private synchronized static int loadTexture(Bitmap bitmap) {
+	synchronized static int loadTexture(Bitmap bitmap) {
 		final int[] textureIds = new int[1];
 		synchronized (Texture.class) {
 			while (textureIds[0] <= sLastId) {
@@ -127,7 +120,7 @@ public class Texture {
 	@Override
 	protected void finalize() throws Throwable {
 		try {
-			dispose();
+			TextureCache.release(data);
 		} finally {
 			super.finalize();
 		}
@@ -142,7 +135,7 @@ public class Texture {
 		return b;
 	}
 
-	private void prepare(byte[] bytes) {
+	private static void prepare(byte[] bytes, FloatBuffer colorKey) {
 		if (bytes[0] != 'B' || bytes[1] != 'M') {
 			throw new RuntimeException("Not a BMP!");
 		}
@@ -247,7 +240,7 @@ public class Texture {
 				.put((color & 0xff) / 255.0f);
 	}
 
-	private boolean containsColor(byte[] bytes, int start, int len, byte b, byte g, byte r) {
+	private static boolean containsColor(byte[] bytes, int start, int len, byte b, byte g, byte r) {
 		for (int i = start; i < start + len; ) {
 			if (bytes[i++] != b) {
 				i += 3;
@@ -262,7 +255,7 @@ public class Texture {
 		return false;
 	}
 
-	private void fix(byte[] b) {
+	private static void fix(byte[] b) {
 		int bInfoOffset = BMP_FILE_HEADER_SIZE;
 		int bInfoSize = b[bInfoOffset++] & 0xFF | (b[bInfoOffset++] & 0xFF) << 8
 				| (b[bInfoOffset++] & 0xFF) << 16 | (b[bInfoOffset] & 0xFF) << 24;
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Yury Kharchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mascotcapsule.micro3d.v3;
+
+import static android.opengl.GLES20.*;
+import static com.mascotcapsule.micro3d.v3.Util3D.TAG;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Content-addressed cache of decoded textures.
+ * <p>
+ * Identical BMP data shares one decoded bitmap and one GL texture.
+ * Entries are reference counted by {@link Texture} instances, unreferenced
+ * entries stay cached for reuse until the texture memory exceeds the budget
+ * ({@code micro3d.v3.texture.cache.budget} system property, in megabytes).
+ * GL names of evicted entries are deleted on the render thread
+ * by {@link #deletePendingTextures()}.
+ */
+class TextureCache {
+	private static final int DEFAULT_BUDGET_MB = 32;
+
+	private static final long budget = Integer.getInteger("micro3d.v3.texture.cache.budget",
+			DEFAULT_BUDGET_MB) * 1024L * 1024L;
+	/** Access-ordered, so that iteration starts from the least recently used entry */
+	private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static final ArrayList<Integer> pendingDeletes = new ArrayList<>();
+	private static long memoryUsage;
+	private static long uploadedMemory;
+
+	static synchronized Entry obtain(byte[] data) {
+		Key key = new Key(data);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			// the key must own its data, the caller is free to modify the array later
+			key = new Key(data.clone(), key.hash);
+			entry = new Entry(key);
+			entries.put(key, entry);
+			memoryUsage += entry.size;
+			trim();
+		}
+		entry.refCount++;
+		return entry;
+	}
+
+	static synchronized void release(Entry entry) {
+		if (--entry.refCount == 0) {
+			trim();
+		}
+	}
+
+	/**
+	 * Returns the memory occupied by cached textures in bytes.
+	 */
+	static synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/**
+	 * Returns the memory occupied by textures uploaded to the GPU in bytes.
+	 */
+	static synchronized long getUploadedMemory() {
+		return uploadedMemory;
+	}
+
+	/**
+	 * Deletes GL textures of evicted entries, must be called with the EGL context bound.
+	 */
+	static void deletePendingTextures() {
+		int[] ids;
+		synchronized (TextureCache.class) {
+			int size = pendingDeletes.size();
+			if (size == 0) {
+				return;
+			}
+			ids = new int[size];
+			for (int i = 0; i < size; i++) {
+				ids[i] = pendingDeletes.get(i);
+			}
+			pendingDeletes.clear();
+		}
+		glDeleteTextures(ids.length, ids, 0);
+	}
+
+	private static void trim() {
+		if (memoryUsage <= budget) {
+			return;
+		}
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (memoryUsage > budget && iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if (entry.refCount > 0) {
+				continue;
+			}
+			iterator.remove();
+			memoryUsage -= entry.size;
+			if (entry.texId > 0) {
+				uploadedMemory -= entry.size;
+				pendingDeletes.add(entry.texId);
+				entry.texId = -1;
+			}
+			entry.image.recycle();
+		}
+		Log.d(TAG, "Texture cache: " + entries.size() + " textures, "
+				+ (memoryUsage >> 10) + " KiB used, " + (uploadedMemory >> 10) + " KiB uploaded");
+	}
+
+	static final class Entry {
+		final FloatBuffer colorKey =
+				ByteBuffer.allocateDirect(3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		final Bitmap image;
+		final int width;
+		final int height;
+		final long size;
+		private int refCount;
+		private int texId = -2;
+
+		Entry(Key key) {
+			// decoding patches the palette and header, keep the key data intact
+			image = Texture.decode(key.data.clone(), colorKey);
+			width = image.getWidth();
+			height = image.getHeight();
+			size = (long) width * height * 4;
+		}
+
+		int getId() {
+			if (glIsTexture(texId)) {
+				return texId;
+			}
+			synchronized (TextureCache.class) {
+				if (texId == -1) throw new IllegalStateException("Already disposed!!!");
+				boolean uploaded = texId > 0;
+				texId = Texture.loadTexture(image);
+				if (!uploaded && texId > 0) {
+					uploadedMemory += size;
+				}
+			}
+			return texId;
+		}
+	}
+
+	private static final class Key {
+		final byte[] data;
+		final int hash;
+
+		Key(byte[] data) {
+			this.data = data;
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, data.length);
+			hash = (int) crc.getValue() ^ data.length;
+		}
+
+		Key(byte[] data, int hash) {
+			this.data = data;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return hash == key.hash && Arrays.equals(data, key.data);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
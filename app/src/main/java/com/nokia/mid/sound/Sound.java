@@ -17,13 +17,13 @@
 
 package com.nokia.mid.sound;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
-import javax.microedition.media.Manager;
 import javax.microedition.media.MediaException;
 import javax.microedition.media.Player;
 import javax.microedition.media.PlayerListener;
+import javax.microedition.media.SampleBank;
+import javax.microedition.media.VoiceManager;
 import javax.microedition.media.tone.MidiToneConstants;
 import javax.microedition.media.tone.ToneManager;
 
@@ -62,7 +62,7 @@ public class Sound {
 	}
 
 	public static int getConcurrentSoundCount(int type) {
-		return 1;
+		return VoiceManager.getMaxVoices();
 	}
 
 	public static int[] getSupportedFormats() {
@@ -86,9 +86,7 @@ public class Sound {
 		}
 
 		try {
-			if (player != null) {
-				player.close();
-			}
+			releasePlayer();
 			int note = convertFreqToNote(freq);
 			player = ToneManager.createPlayer(note, (int) duration, MidiToneConstants.TONE_MAX_VOLUME);
 			state = SOUND_STOPPED;
@@ -111,10 +109,8 @@ public class Sound {
 				default:
 					throw new IllegalArgumentException();
 			}
-			if (player != null) {
-				player.close();
-			}
-			player = Manager.createPlayer(new ByteArrayInputStream(data), mime);
+			releasePlayer();
+			player = SampleBank.acquire(data, mime);
 			player.addPlayerListener(playerListener);
 			state = SOUND_STOPPED;
 		} catch (IOException e) {
@@ -123,6 +119,9 @@ public class Sound {
 	}
 
 	public void play(int loop) {
+		if (player == null) {
+			return;
+		}
 		try {
 			if (loop == 0) {
 				loop = -1;
@@ -139,11 +138,24 @@ public class Sound {
 	}
 
 	public void release() {
-		player.close();
+		releasePlayer();
 		postEvent(SOUND_UNINITIALIZED);
 	}
 
+	private void releasePlayer() {
+		if (player != null) {
+			if (player.getState() != Player.CLOSED) {
+				player.removePlayerListener(playerListener);
+			}
+			SampleBank.release(player);
+			player = null;
+		}
+	}
+
 	public void resume() {
+		if (player == null) {
+			return;
+		}
 		try {
 			player.start();
 			postEvent(SOUND_PLAYING);
@@ -160,6 +172,9 @@ public class Sound {
 	}
 
 	public void stop() {
+		if (player == null) {
+			return;
+		}
 		try {
 			player.stop();
 			postEvent(SOUND_STOPPED);
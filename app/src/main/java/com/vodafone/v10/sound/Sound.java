@@ -16,12 +16,11 @@
 
 package com.vodafone.v10.sound;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
-import javax.microedition.media.Manager;
 import javax.microedition.media.MediaException;
 import javax.microedition.media.Player;
+import javax.microedition.media.SampleBank;
 
 public class Sound {
 	private Player player;
@@ -30,7 +29,8 @@ public class Sound {
 		if (data == null) {
 			throw new NullPointerException("sound data is null!");
 		}
-		player = Manager.createPlayer(new ByteArrayInputStream(data), "audio/xmf");
+		// the player goes back to the bank when the sound is collected
+		player = SampleBank.acquire(data, "audio/xmf", this);
 		try {
 			player.realize();
 		} catch (MediaException e) {
@@ -56,6 +56,9 @@ public class SoundTrack {
 	}
 
 	public void stop() {
+		if (player == null) {
+			return;
+		}
 		try {
 			player.stop();
 			state = READY;
@@ -65,6 +68,9 @@ public class SoundTrack {
 	}
 
 	public void play(int loop) {
+		if (player == null) {
+			return;
+		}
 		try {
 			if (state != PLAYING) {
 				loopCount = loop;
@@ -81,7 +87,10 @@ public class SoundTrack {
 	}
 
 	public void removeSound() {
+		// the player belongs to the sound and is released when the sound is collected
+		stop();
 		this.snd = null;
+		this.player = null;
 	}
 
 	public void setEventListener(SoundTrackListener l) {
@@ -22,6 +22,7 @@ package javax.microedition.lcdui;
 import static android.opengl.GLES20.*;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Matrix;
 import android.graphics.Paint;
@@ -55,6 +56,7 @@ import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
@@ -73,6 +75,7 @@ import javax.microedition.lcdui.overlay.Layer;
 import javax.microedition.lcdui.overlay.Overlay;
 import javax.microedition.lcdui.overlay.OverlayView;
 import javax.microedition.shell.MicroActivity;
+import javax.microedition.shell.ThreadPolicy;
 import javax.microedition.util.ContextHolder;
 
 import io.reactivex.Single;
@@ -133,6 +136,7 @@ public abstract class Canvas extends Displayable {
 	private static boolean screenshotRawMode;
 	private static int scaleType;
 	private static int screenGravity;
+	private static FrameListener frameListener;
 
 	private final Object bufferLock = new Object();
 	private final Object surfaceLock = new Object();
@@ -228,6 +232,17 @@ public abstract class Canvas extends Displayable {
 		screenshotRawMode = enable;
 	}
 
+	public static void setFrameListener(FrameListener listener) {
+		frameListener = listener;
+	}
+
+	private void notifyFrame() {
+		FrameListener listener = frameListener;
+		if (listener != null) {
+			listener.onFrame(this);
+		}
+	}
+
 	public int getKeyCode(int gameAction) {
 		int res = KeyMapper.getKeyCode(gameAction);
 		if (res != Integer.MAX_VALUE) {
@@ -637,6 +652,7 @@ public abstract class Canvas extends Displayable {
 		synchronized (bufferLock) {
 			offscreenCopy.getSingleGraphics().flush(image, x, y, width, height);
 		}
+		notifyFrame();
 		requestFlushToScreen();
 	}
 
@@ -646,6 +662,7 @@ public abstract class Canvas extends Displayable {
 		synchronized (bufferLock) {
 			image.copyTo(offscreenCopy, x, y);
 		}
+		notifyFrame();
 		requestFlushToScreen();
 	}
 
@@ -776,9 +793,12 @@ public abstract class Canvas extends Displayable {
 		private final int[] bgTextureId = new int[1];
 		private ShaderProgram program;
 		private boolean isStarted;
+		/** Time of the first render request since the last frame */
+		private final AtomicLong renderRequested = new AtomicLong();
 
 		@Override
 		public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+			ThreadPolicy.apply(ThreadPolicy.RENDER);
 			program = new ShaderProgram(shaderFilter);
 			int c = Canvas.backgroundColor;
 			glClearColor((c >> 16 & 0xff) / 255.0f, (c >> 8 & 0xff) / 255.0f, (c & 0xff) / 255.0f, 1.0f);
@@ -802,6 +822,10 @@ public abstract class Canvas extends Displayable {
 
 		@Override
 		public void onDrawFrame(GL10 gl) {
+			long requested = renderRequested.getAndSet(0);
+			if (requested != 0) {
+				ThreadPolicy.recordLatency(ThreadPolicy.RENDER, System.nanoTime() - requested);
+			}
 			glClear(GL_COLOR_BUFFER_BIT);
 			synchronized (bufferLock) {
 				GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, offscreenCopy.getBitmap(), 0);
@@ -845,6 +869,7 @@ public abstract class Canvas extends Displayable {
 		}
 
 		public void requestRender() {
+			renderRequested.compareAndSet(0, System.nanoTime());
 			mView.requestRender();
 		}
 
@@ -887,6 +912,13 @@ public abstract class Canvas extends Displayable {
 		}
 	}
 
+	/**
+	 * Receives every frame copied to the screen buffer of a canvas, on the thread that produced it.
+	 */
+	public interface FrameListener {
+		void onFrame(Canvas canvas);
+	}
+
 	private class PaintEvent extends Event implements EventFilter {
 		private int clipLeft;
 		private int clipTop;
@@ -927,6 +959,7 @@ public abstract class Canvas extends Displayable {
 			synchronized (bufferLock) {
 				offscreen.copyTo(offscreenCopy);
 			}
+			notifyFrame();
 			if (surface == null || !surface.isValid()) {
 				return;
 			}
@@ -1268,11 +1301,12 @@ public abstract class Canvas extends Displayable {
 		private SoftBar() {
 			super(Canvas.this, false);
 			MicroActivity activity = ContextHolder.getActivity();
-			this.overlayView = activity.binding.overlayView;
-			DisplayMetrics metrics = activity.getResources().getDisplayMetrics();
+			Context context = activity != null ? activity : ContextHolder.getAppContext();
+			this.overlayView = activity != null ? activity.binding.overlayView : null;
+			DisplayMetrics metrics = context.getResources().getDisplayMetrics();
 			padding = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 5, metrics);
-			textColor = ContextCompat.getColor(activity, R.color.accent);
-			bgColor = ContextCompat.getColor(activity, R.color.background);
+			textColor = ContextCompat.getColor(context, R.color.accent);
+			bgColor = ContextCompat.getColor(context, R.color.background);
 			notifyChanged();
 		}
 
@@ -1302,11 +1336,13 @@ public abstract class Canvas extends Displayable {
 						rightLabel = commands.get(0).getAndroidLabel();
 						break;
 					default:
-						leftLabel = overlayView.getResources().getString(R.string.cmd_menu);
+						leftLabel = ContextHolder.getAppContext().getString(R.string.cmd_menu);
 						rightLabel = commands.get(0).getAndroidLabel();
 				}
 			}
-			overlayView.postInvalidate();
+			if (overlayView != null) {
+				overlayView.postInvalidate();
+			}
 		}
 
 		private boolean fireLeftSoft() {
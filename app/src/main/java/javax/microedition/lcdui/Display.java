@@ -24,6 +24,7 @@ import javax.microedition.lcdui.event.Event;
 import javax.microedition.lcdui.event.EventQueue;
 import javax.microedition.lcdui.event.RunnableEvent;
 import javax.microedition.midlet.MIDlet;
+import javax.microedition.shell.MicroActivity;
 import javax.microedition.util.ContextHolder;
 
 import ru.woesss.j2me.jar.Descriptor;
@@ -84,6 +85,14 @@ public class Display {
 		queue.postEvent(event);
 	}
 
+	/**
+	 * Returns the number of posted events that were merged with or dropped
+	 * in favor of an event already in the queue.
+	 */
+	public static long getCoalescedEventCount() {
+		return queue.getCoalescedCount();
+	}
+
 	static EventQueue getEventQueue() {
 		return queue;
 	}
@@ -142,7 +151,11 @@ public class Display {
 	}
 
 	private void showCurrent() {
-		ContextHolder.getActivity().setCurrent(current);
+		MicroActivity activity = ContextHolder.getActivity();
+		// without an activity (HeadlessRunner) the current displayable is only tracked here
+		if (activity != null) {
+			activity.setCurrent(current);
+		}
 	}
 
 	public Displayable getCurrent() {
@@ -19,12 +19,23 @@ package javax.microedition.lcdui.event;
 import android.util.Log;
 
 import javax.microedition.lcdui.Canvas;
-import javax.microedition.util.ArrayStack;
-
+import javax.microedition.util.ObjectPool;
+
+/**
+ * Key, pointer and visibility events of a canvas.
+ * <p>
+ * A drag of a pointer replaces the queued drag of the same pointer and a key repeat
+ * replaces the queued repeat of the same key, so the MIDlet gets the latest sample
+ * instead of falling behind the input. With the {@code lcdui.drag.history} system property
+ * set, the replaced drag samples are kept and delivered in order before the latest one.
+ * Events marked with {@link #setReplaceable(boolean)} are never merged, for an exact replay of input.
+ */
 public class CanvasEvent extends Event {
 	private static final String TAG = CanvasEvent.class.getName();
+	private static final boolean DRAG_HISTORY = Boolean.getBoolean("lcdui.drag.history");
+	private static final int MAX_HISTORY = 64;
 
-	private static final ArrayStack<CanvasEvent> recycled = new ArrayStack<>();
+	private static final ObjectPool<CanvasEvent> recycled = new ObjectPool<>(64);
 
 	public static final int KEY_PRESSED = 0;
 	public static final int KEY_REPEATED = 1;
@@ -36,8 +47,6 @@ public class CanvasEvent extends Event {
 	public static final int HIDE_NOTIFY = 7;
 	public static final int SIZE_CHANGED = 8;
 
-	private static final int[] enqueued = new int[9];
-
 	private Canvas canvas;
 	private int eventType;
 
@@ -45,10 +54,15 @@ public class CanvasEvent extends Event {
 
 	private int pointer;
 	private float x, y;
+	/** Coordinates of the replaced drag samples, oldest first */
+	private float[] history;
+	private int historySize;
 
 	private int width;
 	private int height;
 
+	private boolean replaceable = true;
+
 	public static Event getInstance(Canvas canvas, int eventType) {
 		return obtain(canvas, eventType);
 	}
@@ -74,8 +88,15 @@ public class CanvasEvent extends Event {
 		return instance;
 	}
 
+	/**
+	 * Allows or forbids merging this event with a queued one, in either direction.
+	 */
+	public void setReplaceable(boolean replaceable) {
+		this.replaceable = replaceable;
+	}
+
 	private static CanvasEvent obtain(Canvas canvas, int eventType) {
-		CanvasEvent instance = recycled.pop();
+		CanvasEvent instance = recycled.obtain();
 		if (instance == null) {
 			instance = new CanvasEvent();
 		}
@@ -121,6 +142,9 @@ public class CanvasEvent extends Event {
 
 			case POINTER_DRAGGED:
 				try {
+					for (int i = 0; i < historySize; i += 2) {
+						canvas.pointerDragged(pointer, history[i], history[i + 1]);
+					}
 					canvas.pointerDragged(pointer, x, y);
 				} catch (Exception e) {
 					Log.e(TAG, "pointerDragged: ", e);
@@ -164,28 +188,64 @@ public class CanvasEvent extends Event {
 	@Override
 	public void recycle() {
 		canvas = null;
-		recycled.push(this);
+		historySize = 0;
+		replaceable = true;
+		recycled.recycle(this);
 	}
 
 	@Override
 	public void enterQueue() {
-		enqueued[eventType]++;
 	}
 
 	@Override
 	public void leaveQueue() {
-		enqueued[eventType]--;
 	}
 
 	@Override
 	public boolean placeableAfter(Event event) {
-		if (event instanceof CanvasEvent) {
-			switch (eventType) {
-				case KEY_REPEATED:
-				case POINTER_DRAGGED:
-					return enqueued[eventType] < 2;
-			}
-		}
 		return true;
 	}
+
+	@Override
+	public boolean replaces(Event event) {
+		historySize = 0;
+		if (!(event instanceof CanvasEvent)) {
+			return false;
+		}
+		CanvasEvent queued = (CanvasEvent) event;
+		if (!replaceable || !queued.replaceable) {
+			return false;
+		}
+		if (queued.eventType != eventType || queued.canvas != canvas) {
+			return false;
+		}
+		switch (eventType) {
+			case KEY_REPEATED:
+				return queued.keyCode == keyCode;
+			case POINTER_DRAGGED:
+				if (queued.pointer != pointer) {
+					return false;
+				}
+				if (DRAG_HISTORY) {
+					takeHistory(queued);
+				}
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private void takeHistory(CanvasEvent queued) {
+		if (history == null) {
+			history = new float[MAX_HISTORY * 2];
+		}
+		// keep the latest samples if there are too many
+		int size = Math.min(queued.historySize, history.length - 2);
+		if (size > 0) {
+			System.arraycopy(queued.history, queued.historySize - size, history, 0, size);
+		}
+		history[size] = queued.x;
+		history[size + 1] = queued.y;
+		historySize = size + 2;
+	}
 }
@@ -72,4 +72,20 @@ public abstract class Event implements Runnable {
 	 * @return true, if we agree to that
 	 */
 	public abstract boolean placeableAfter(Event event);
+
+	/**
+	 * Check if this event can take the place of the last event in the queue.
+	 * The replaced event leaves the queue without being processed, but it is not recycled:
+	 * another producer may still be reading it, so it is left to the GC and must not be reused.
+	 * <p>
+	 * The data of the replaced event can be taken over here. If the replacement fails
+	 * because the event has just left the queue, this method is called again
+	 * with the new last event, or with null if the queue is empty.
+	 *
+	 * @param event the last event in the queue, or null
+	 * @return true, if this event should replace it
+	 */
+	public boolean replaces(Event event) {
+		return false;
+	}
 }
\ No newline at end of file
@@ -17,23 +17,60 @@
 
 package javax.microedition.lcdui.event;
 
-import javax.microedition.util.LinkedList;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.microedition.shell.ThreadPolicy;
 
 /**
  * The event queue. A really complicated thing.
+ * <p>
+ * Events are kept in a linked list which is appended by any number of threads
+ * and consumed by the event thread without locks. The first node is always
+ * an empty one: the consumer takes the event of the next node and makes that node
+ * the new first one, so the queue counts as empty while its last event is processed.
+ * <p>
+ * An event that {@link Event#replaces(Event) replaces} the last one takes its place
+ * in the queue, so bursts of input are merged into their latest sample.
  */
 public class EventQueue implements Runnable {
+	private static final String TAG = EventQueue.class.getName();
+	private static final long STATS_INTERVAL = 10000;
+	private static final AtomicReferenceFieldUpdater<Node, Event> EVENT =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, Event.class, "event");
+
 	private static boolean immediate;
 
-	private final LinkedList<Event> queue = new LinkedList<>();
-	private final Object waiter = new Object();
+	private final AtomicReference<Node> tail;
+	/** Only changed by the event thread */
+	private volatile Node head;
+	/** Events up to this node are dropped, see {@link #clear()} */
+	private volatile Node clearMark;
 	private final Object interlock = new Object();
 	private final Object callbackLock = new Object();
 
-	private boolean enabled;
+	private volatile boolean enabled;
 	private Thread thread;
-	private boolean running;
-	private boolean continuerun;
+	private volatile Thread consumer;
+	private volatile boolean waiting;
+	/** Time a producer woke the consumer up, 0 if it was woken for another reason */
+	private volatile long wakeTime;
+
+	private final AtomicLong posted = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private long reportedCoalesced;
+	private long reportTime;
+
+	public EventQueue() {
+		Node node = new Node(null);
+		head = node;
+		tail = new AtomicReference<>(node);
+	}
 
 	/**
 	 * Enable immediate processing mode.
@@ -76,62 +113,94 @@ public class EventQueue implements Runnable {
 			return;      // and nothing to do here
 		}
 
-		boolean empty;
+		posted.incrementAndGet();
+		Node node = null;
+		while (true) {
+			Node last = tail.get();
+			Event lastEvent = last.event;
 
-		synchronized (queue) {   // all operations with the queue must be synchronized (on itself)
-			empty = queue.isEmpty();
-
-			if (empty || event.placeableAfter(queue.getLast())) {
-				/*
-				 * If the queue itself is empty, then this already implies that either
-				 * exactly one event remains and it is now being processed,
-				 * or there is not a single event left at all.
-				 *
-				 * In both cases, a new event should be added to the queue,
-				 * regardless of event.placeableAfter() value.
-				 */
-
-				queue.addLast(event);
+			if (event.replaces(lastEvent)) {
+				// the event may be processed as soon as it is in the queue
 				event.enterQueue();
-			} else {
-				// it is more correct, but additional checks are required
-				// queue.setLast(event).recycle(); // remove the previous event and add the new one.
-				event.recycle(); // more reliable // leave the previous event, recycle the new one.
+				if (EVENT.compareAndSet(last, lastEvent, event)) {
+					// another producer may still compare against the replaced event,
+					// so it is left to the GC instead of going back to its pool
+					lastEvent.leaveQueue();
+					coalesced.incrementAndGet();
+					return;
+				}
+				event.leaveQueue();
+				// the event thread has just taken it
+				continue;
 			}
-		}
 
-		if (empty) {
 			/*
-			 * on the other hand, if the queue was non-empty,
-			 * there is at least one more iteration for the events,
-			 * and this is not necessary
+			 * If the queue itself is empty, then this already implies that either
+			 * exactly one event remains and it is now being processed,
+			 * or there is not a single event left at all.
+			 *
+			 * In both cases, a new event should be added to the queue,
+			 * regardless of event.placeableAfter() value.
 			 */
+			if (lastEvent != null && !event.placeableAfter(lastEvent)) {
+				// leave the previous event, recycle the new one.
+				event.recycle();
+				coalesced.incrementAndGet();
+				return;
+			}
 
-			synchronized (waiter) {
-				if (running) {
-					continuerun = true;
-				} else {
-					waiter.notifyAll();
-				}
+			if (node == null) {
+				node = new Node(event);
 			}
+			if (tail.compareAndSet(last, node)) {
+				// the event thread can't see the node until it is linked
+				event.enterQueue();
+				last.next = node;
+				break;
+			}
+			// another thread has added an event, check against it again
+		}
+
+		if (waiting) {
+			wakeTime = System.nanoTime();
+			LockSupport.unpark(consumer);
 		}
 	}
 
+	/**
+	 * Returns the number of events posted in the queued mode.
+	 */
+	public long getPostedCount() {
+		return posted.get();
+	}
+
+	/**
+	 * Returns the number of posted events that were merged with or dropped
+	 * in favor of an event already in the queue.
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
 	/**
 	 * Check if there is anything in the queue.
 	 *
 	 * @return true, if the queue is empty
 	 */
 	public boolean isEmpty() {
-		return queue.isEmpty();
+		return tail.get().event == null;
 	}
 
 	/**
 	 * Clear the queue.
+	 * <p>
+	 * The event thread drops the events that are in the queue now.
 	 */
 	public void clear() {
-		synchronized (queue) {
-			queue.clear();
+		clearMark = tail.get();
+		Thread consumer = this.consumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
 		}
 	}
 
@@ -155,8 +224,9 @@ public class EventQueue implements Runnable {
 	public void stopProcessing() {
 		enabled = false;
 
-		synchronized (waiter) {
-			waiter.notifyAll();
+		Thread consumer = this.consumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
 		}
 
 		synchronized (interlock) {
@@ -169,41 +239,77 @@ public class EventQueue implements Runnable {
 	 */
 	@Override
 	public void run() {
+		ThreadPolicy.apply(ThreadPolicy.EVENT);
+		long busyStart = System.nanoTime();
 		synchronized (interlock) {
-			running = true;
+			consumer = Thread.currentThread();
 
 			while (enabled) {
-
-				Event event;
-				synchronized (queue) {
-					event = queue.removeFirst();
+				Node first = head;
+				Node mark = clearMark;
+				if (mark != null && first == mark) {
+					clearMark = null;
+					mark = null;
 				}
 
-				if (event != null) {
-					synchronized (callbackLock) {
-						event.run();
+				Node next = first.next;
+				if (next != null) {
+					Event event = EVENT.getAndSet(next, null);
+					head = next;
+
+					if (mark != null) {
+						event.leaveQueue();
+						event.recycle();
+					} else {
+						synchronized (callbackLock) {
+							event.run();
+						}
 					}
+				} else if (tail.get() != first) {
+					// an event is being linked right now
+					Thread.yield();
 				} else {
-					synchronized (waiter) {
-						if (continuerun) {
-							continuerun = false;
-						} else {
-							running = false;
-
-							try {
-								waiter.wait();
-							} catch (InterruptedException ie) {
-								ie.printStackTrace();
-							}
-
-							running = true;
+					reportStats();
+					waiting = true;
+					// an event added before the flag was set is seen here
+					if (first.next == null && enabled && clearMark == null) {
+						ThreadPolicy.reportWork(System.nanoTime() - busyStart);
+						LockSupport.park(this);
+						busyStart = System.nanoTime();
+						long woken = wakeTime;
+						if (woken != 0) {
+							ThreadPolicy.recordLatency(ThreadPolicy.EVENT, busyStart - woken);
+							wakeTime = 0;
 						}
 					}
+					waiting = false;
 				}
 			}
+
+			consumer = null;
 		}
 	}
 
+	/**
+	 * Logs the coalesce ratio from time to time, when the queue gets idle.
+	 */
+	private void reportStats() {
+		long count = coalesced.get();
+		if (count == reportedCoalesced) {
+			return;
+		}
+		long now = SystemClock.uptimeMillis();
+		if (now - reportTime < STATS_INTERVAL) {
+			return;
+		}
+		reportedCoalesced = count;
+		reportTime = now;
+		long total = posted.get();
+		Log.d(TAG, "Coalesced " + count + " of " + total + " events ("
+				+ count * 100 / Math.max(total, 1) + "%), serial runnables: batched="
+				+ RunnableEvent.getBatchedCount() + ", max queued=" + RunnableEvent.getMaxQueuedCount());
+	}
+
 	public void serviceRepaints(Event paintEvent) {
 		if (immediate) {
 			return;
@@ -213,4 +319,13 @@ public class EventQueue implements Runnable {
 			paintEvent.process();
 		}
 	}
-}
\ No newline at end of file
+
+	private static final class Node {
+		volatile Event event;
+		volatile Node next;
+
+		Node(Event event) {
+			this.event = event;
+		}
+	}
+}
@@ -17,45 +17,120 @@
 
 package javax.microedition.lcdui.event;
 
+import android.util.Log;
 import android.widget.Toast;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.microedition.lcdui.ViewHandler;
-import javax.microedition.util.ArrayStack;
 import javax.microedition.util.ContextHolder;
+import javax.microedition.util.ObjectPool;
 
+/**
+ * Runs the runnables of {@link javax.microedition.lcdui.Display#callSerially(Runnable)}.
+ * <p>
+ * A runnable posted while the last event in the queue is a runnable event that has not
+ * started yet joins it, so a burst of runnables is run by one event in the order of posting.
+ * An event posted in between, like a repaint, ends the batch, so the order relative to
+ * other events is kept.
+ * <p>
+ * In the immediate mode the runnables are run on the spot, a runnable that calls
+ * {@code callSerially()} recursively nests deeper. When the nesting gets deeper than
+ * {@code lcdui.immediate.depth} (50 by default, 0 for no limit) the immediate mode
+ * is turned off to avoid a stack overflow.
+ */
 public class RunnableEvent extends Event {
-	private static final ArrayStack<RunnableEvent> recycled = new ArrayStack<>();
-	private static int queued;
+	private static final String TAG = RunnableEvent.class.getName();
+	private static final int MAX_DEPTH = Integer.getInteger("lcdui.immediate.depth", 50);
+	private static final int MAX_BATCH = 64;
+
+	private static final ObjectPool<RunnableEvent> recycled = new ObjectPool<>(16);
+	/** Events in the queue, or the nesting depth in the immediate mode */
+	private static final AtomicInteger queued = new AtomicInteger();
+	private static final AtomicInteger maxQueued = new AtomicInteger();
+	private static final AtomicLong batched = new AtomicLong();
 
-	private Runnable runnable;
+	private Runnable[] runnables = new Runnable[4];
+	private int size;
+	/**
+	 * Only processed events are reused. A replaced event may still be compared
+	 * with the last event in the queue by another producer and must not be found there again.
+	 */
+	private boolean processed;
 
 	public static Event getInstance(Runnable runnable) {
-		RunnableEvent instance = recycled.pop();
+		RunnableEvent instance = recycled.obtain();
 
 		if (instance == null) {
 			instance = new RunnableEvent();
 		}
 
-		instance.runnable = runnable;
+		instance.runnables[0] = runnable;
+		instance.size = 1;
 
 		return instance;
 	}
 
+	/**
+	 * Returns the number of runnable events waiting in the queue, each with a batch of runnables.
+	 */
+	public static int getQueuedCount() {
+		return queued.get();
+	}
+
+	/**
+	 * Returns the highest number of runnable events that have been waiting in the queue at once.
+	 */
+	public static int getMaxQueuedCount() {
+		return maxQueued.get();
+	}
+
+	/**
+	 * Returns the number of runnables that joined the batch of an earlier one.
+	 */
+	public static long getBatchedCount() {
+		return batched.get();
+	}
+
 	@Override
 	public void process() {
-		runnable.run();
+		processed = true;
+		if (size > 1) {
+			batched.addAndGet(size - 1);
+		}
+		for (int i = 0; i < size; i++) {
+			try {
+				runnables[i].run();
+			} catch (Exception e) {
+				Log.e(TAG, "process: ", e);
+			}
+		}
 	}
 
 	@Override
 	public void recycle() {
-		runnable = null;
-		recycled.push(this);
+		for (int i = 0; i < size; i++) {
+			runnables[i] = null;
+		}
+		size = 0;
+		if (processed) {
+			processed = false;
+			recycled.recycle(this);
+		}
 	}
 
 	@Override
 	public void enterQueue() {
-		if (++queued > 50 && EventQueue.isImmediate()) {
+		int count = queued.incrementAndGet();
+		int max;
+		while (count > (max = maxQueued.get()) && !maxQueued.compareAndSet(max, count)) {
+			// another thread has updated it
+		}
+		if (MAX_DEPTH > 0 && count > MAX_DEPTH && EventQueue.isImmediate()) {
 			EventQueue.setImmediate(false);
+			Log.w(TAG, "Immediate mode disabled: callSerially() nested " + count + " times");
 			ViewHandler.postEvent(() ->
 					Toast.makeText(ContextHolder.getAppContext(),
 							"Immediate mode disabled due to stack overflow",
@@ -65,11 +140,42 @@ public class RunnableEvent extends Event {
 
 	@Override
 	public void leaveQueue() {
-		queued--;
+		queued.decrementAndGet();
 	}
 
 	@Override
 	public boolean placeableAfter(Event event) {
 		return true;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Takes over the runnables of the last event if it is a runnable event.
+	 * The last event is only read, it may be taken by the event thread at any time.
+	 */
+	@Override
+	public boolean replaces(Event event) {
+		Runnable runnable = runnables[size - 1];
+		if (size > 1) {
+			// a previous attempt has failed
+			Arrays.fill(runnables, 1, size, null);
+			runnables[0] = runnable;
+			size = 1;
+		}
+		if (!(event instanceof RunnableEvent)) {
+			return false;
+		}
+		RunnableEvent last = (RunnableEvent) event;
+		Runnable[] lastRunnables = last.runnables;
+		int count = Math.min(last.size, lastRunnables.length);
+		if (count == 0 || count >= MAX_BATCH) {
+			return false;
+		}
+		if (runnables.length <= count) {
+			runnables = new Runnable[Math.max(runnables.length * 2, count + 1)];
+		}
+		System.arraycopy(lastRunnables, 0, runnables, 0, count);
+		runnables[count] = runnable;
+		size = count + 1;
+		return true;
+	}
+}
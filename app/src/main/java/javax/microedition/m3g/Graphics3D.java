@@ -271,7 +271,12 @@ public class Graphics3D {
 	}
 
 	/**
-	 *
+	 * Renders the world in a single native call.
+	 * <p>
+	 * View frustum culling and state sorting are done by the native core:
+	 * nodes cache their bounding boxes (invalidated by transform and child changes)
+	 * and are culled hierarchically against the camera planes, visible submeshes
+	 * are then queued and drawn in order of their appearance sort keys.
 	 */
 	public void render(World world) {
 		integrityCheck();
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 Yury Kharchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.m3g;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * Cache of the images decoded by the {@link Loader} from PNG/JPEG resources.
+ * <p>
+ * Entries are keyed by the resolved resource name, the format and the encoded data, so repeated
+ * loads of the same world or textures shared between several .m3g files skip decoding.
+ * Only the immutable decoded {@link Image} is shared, every load gets its own {@link Image2D}.
+ * Least recently used entries are dropped when the size of the cached pixel data exceeds
+ * the budget ({@code m3g.image.cache.budget} system property, in megabytes, 0 disables the cache).
+ */
+class Image2DCache {
+	private static final int DEFAULT_BUDGET_MB = 16;
+
+	private static final long budget = Integer.getInteger("m3g.image.cache.budget",
+			DEFAULT_BUDGET_MB) * 1024L * 1024L;
+	/** Access-ordered, so that iteration starts from the least recently used entry */
+	private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static long size;
+
+	static boolean isEnabled() {
+		return budget > 0;
+	}
+
+	static synchronized Image get(Key key) {
+		Entry entry = entries.get(key);
+		return entry == null ? null : entry.image;
+	}
+
+	static synchronized void put(Key key, Image image) {
+		Entry entry = new Entry(image, key.data.length);
+		if (entry.size > budget) {
+			return;
+		}
+		Entry old = entries.put(key, entry);
+		if (old != null) {
+			size -= old.size;
+		}
+		size += entry.size;
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (size > budget && iterator.hasNext()) {
+			size -= iterator.next().size;
+			iterator.remove();
+		}
+	}
+
+	private static final class Entry {
+		final Image image;
+		final long size;
+
+		Entry(Image image, int dataLength) {
+			this.image = image;
+			size = (long) image.getWidth() * image.getHeight() * 4 + dataLength;
+		}
+	}
+
+	static final class Key {
+		private final String name;
+		private final int format;
+		/** The encoded image, compared in full, the hash only selects the bucket */
+		private final byte[] data;
+		private final int hash;
+
+		Key(String name, int format, byte[] data, int offset) {
+			this.name = name;
+			this.format = format;
+			this.data = Arrays.copyOfRange(data, offset, data.length);
+			CRC32 crc = new CRC32();
+			crc.update(this.data, 0, this.data.length);
+			hash = (int) crc.getValue();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return format == key.format && hash == key.hash && name.equals(key.name)
+					&& Arrays.equals(data, key.data);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * name.hashCode() + hash;
+		}
+	}
+}
@@ -23,6 +23,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.microedition.io.Connector;
 import javax.microedition.io.HttpConnection;
@@ -30,6 +34,8 @@ import javax.microedition.io.InputConnection;
 import javax.microedition.lcdui.Image;
 import javax.microedition.util.ContextHolder;
 
+import ru.playsoftware.j2meloader.util.IOUtils;
+
 public class Loader {
 	// M3G
 	static final byte[] M3G_FILE_IDENTIFIER =
@@ -62,14 +68,8 @@ public class Loader {
 	private static final int PNG_TYPE = 1;
 	private static final int JPEG_TYPE = 2;
 
-	// Misc.
-	private static final int MAX_IDENTIFIER_LENGTH = M3G_FILE_IDENTIFIER.length;
-
-	// Initial buffer length for the header
-	private static final int AVG_HEADER_SEC_LENGTH = 64;
-
-	// Initial buffer length for the xref section
-	private static final int AVG_XREF_SEC_LENGTH = 128;
+	// Background loader for the asynchronous API
+	private static ExecutorService sExecutor;
 
 	// Instance specific
 	long handle;
@@ -85,6 +85,9 @@ public class Loader {
 	private byte[] iStreamData = null;
 	private int iStreamOffset = 0;
 
+	// Feed the native decoder section by section, releasing the native lock in between
+	private boolean iIncremental = false;
+
 	private Interface iInterface;
 
 	//#ifdef RD_JAVA_OMJ
@@ -107,9 +110,10 @@ public class Loader {
 	 * @param aFileHistory        File storage
 	 * @param aParentResourceName Resource name
 	 */
-	private Loader(Vector aFileHistory, String aParentResourceName) {
+	private Loader(Vector aFileHistory, String aParentResourceName, boolean aIncremental) {
 		iParentResourceName = aParentResourceName;
 		iFileHistory = aFileHistory;
+		iIncremental = aIncremental;
 		iInterface = Interface.getInstance();
 	}
 
@@ -148,6 +152,75 @@ public class Loader {
 		}
 	}
 
+	/**
+	 * Non-standard extension of {@link #load(String)}.
+	 * <p>
+	 * Reads and decodes the resource on a background thread, feeding the native
+	 * decoder one section at a time, so that the caller can keep rendering
+	 * while a large file is being loaded. Sections are inflated and external
+	 * images are decoded on the loader thread.
+	 *
+	 * @param name resource name or URI
+	 * @return a future holding the loaded objects, {@link Future#get()} throws
+	 * an {@link java.util.concurrent.ExecutionException} wrapping the load error
+	 */
+	public static Future<Object3D[]> loadAsync(final String name) {
+		if (name == null) {
+			throw new NullPointerException();
+		}
+		return getExecutor().submit(new Callable<Object3D[]>() {
+			@Override
+			public Object3D[] call() throws Exception {
+				Loader loader = new Loader();
+				loader.iIncremental = true;
+				try {
+					return loader.loadFromStream(name);
+				} catch (SecurityException | IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException("Load error " + e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Non-standard extension of {@link #load(byte[], int)}, see {@link #loadAsync(String)}.
+	 */
+	public static Future<Object3D[]> loadAsync(final byte[] data, final int offset) {
+		if (data == null) {
+			throw new NullPointerException();
+		}
+		if (offset < 0 || offset >= data.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return getExecutor().submit(new Callable<Object3D[]>() {
+			@Override
+			public Object3D[] call() throws Exception {
+				Loader loader = new Loader();
+				loader.iIncremental = true;
+				try {
+					return loader.loadFromByteArray(data, offset);
+				} catch (SecurityException | IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException("Load error " + e);
+				}
+			}
+		});
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (sExecutor == null) {
+			sExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "M3GLoader");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return sExecutor;
+	}
+
 	/**
 	 * @see javax.microedition.m3g.Loader#load(String)
 	 */
@@ -161,24 +234,25 @@ public class Loader {
 		}
 		iResourceName = aName;
 		iFileHistory.addElement(aName);
-		PeekInputStream stream = new PeekInputStream(
-				getInputStream(aName), MAX_IDENTIFIER_LENGTH);
-		// png, jpeg or m3g
-		int type = getIdentifierType(stream);
-		stream.rewind();
-		iStreamData = null;
-		iStreamOffset = 0;
-
-		Object3D[] objects;
+		// Read the whole resource at once, the data is then reused
+		// both for the identifier check and the image decoding
+		InputStream in = getInputStream(aName);
+		if (in == null) {
+			throw new IOException("Resource not found: " + aName);
+		}
 		try {
-			objects = doLoad(stream, type);
+			iStreamData = IOUtils.toByteArray(in);
 		} finally {
 			try {
-				stream.close();
+				in.close();
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
+		iStreamOffset = 0;
+		// png, jpeg or m3g
+		int type = getIdentifierType(iStreamData, 0);
+		Object3D[] objects = doLoad(new ByteArrayInputStream(iStreamData), type);
 		// Finally, remove file from history
 		iFileHistory.removeElement(aName);
 		return objects;
@@ -405,6 +479,15 @@ public class Loader {
 	 * @return An array of newly created Object3D instances
 	 */
 	private Object3D[] buildImage2D(int aColourFormat) throws IOException {
+		Image2DCache.Key key = null;
+		if (iStreamData != null && Image2DCache.isEnabled()) {
+			key = new Image2DCache.Key(getResourceUri(iResourceName), aColourFormat,
+					iStreamData, iStreamOffset);
+			Image cached = Image2DCache.get(key);
+			if (cached != null) {
+				return new Object3D[]{new Image2D(aColourFormat, cached)};
+			}
+		}
 		InputStream stream;
 		if (iStreamData == null) {
 			stream = getInputStream(iResourceName);
@@ -412,9 +495,9 @@ public class Loader {
 			stream = new ByteArrayInputStream(iStreamData, iStreamOffset, iStreamData.length - iStreamOffset);
 		}
 		// Create an image object
-		Image2D i2d;
+		Image image;
 		try {
-			i2d = new Image2D(aColourFormat, Image.createImage(stream));
+			image = Image.createImage(stream);
 		} finally {
 			try {
 				stream.close();
@@ -422,7 +505,10 @@ public class Loader {
 				e.printStackTrace();
 			}
 		}
-		return new Object3D[]{i2d};
+		if (key != null) {
+			Image2DCache.put(key, image);
+		}
+		return new Object3D[]{new Image2D(aColourFormat, image)};
 	}
 
 
@@ -434,14 +520,10 @@ public class Loader {
 	 */
 	private Object3D[] loadM3G(InputStream aStream) throws IOException {
 		aStream.skip(M3G_FILE_IDENTIFIER.length);
-		if (aStream instanceof PeekInputStream)
-			((PeekInputStream) aStream).increasePeekBuffer(AVG_HEADER_SEC_LENGTH);
 
 		// Read header
 		int compressionScheme = readByte(aStream);
 		int totalSectionLength = readUInt32(aStream);
-		if (aStream instanceof PeekInputStream && totalSectionLength > AVG_HEADER_SEC_LENGTH)
-			((PeekInputStream) aStream).increasePeekBuffer(totalSectionLength - AVG_HEADER_SEC_LENGTH);
 		int uncompressedLength = readUInt32(aStream);
 
 		int objectType = readByte(aStream);
@@ -461,8 +543,6 @@ public class Loader {
 		Interface.register(this);
 
 		if (externalLinks) {
-			if (aStream instanceof PeekInputStream)
-				((PeekInputStream) aStream).increasePeekBuffer(AVG_XREF_SEC_LENGTH);
 			loadExternalRefs(aStream);
 			if (iLoadedObjects.size() > 0)   // Load and set external references
 			{
@@ -476,16 +556,20 @@ public class Loader {
 		}
 
 		// Reset stream
-		if (aStream instanceof PeekInputStream)
-			((PeekInputStream) aStream).rewind();
-		else if (aStream.markSupported())
+		if (aStream.markSupported())
 			aStream.reset(); // Reset is supported in ByteArrayInputStreams
 
 		int read = 0;
-		int size = aStream.available();
-
-		if (size == 0) {
-			size = 2048;    // start with some size
+		int size;
+		if (iIncremental) {
+			// start with the file identifier and the header section,
+			// the native loader then reports the size of each next section
+			size = M3G_FILE_IDENTIFIER.length + totalSectionLength;
+		} else {
+			size = aStream.available();
+			if (size == 0) {
+				size = 2048;    // start with some size
+			}
 		}
 
 		while (read < iTotalFileSize) {
@@ -500,7 +584,7 @@ public class Loader {
 			read += size;
 
 			size = _decodeData(handle, 0, data);
-			if (size > 0 && aStream.available() > size) {
+			if (!iIncremental && size > 0 && aStream.available() > size) {
 				size = aStream.available();
 			}
 		}
@@ -563,8 +647,6 @@ public class Loader {
 
 		int totalSectionLength = readUInt32(aStream);
 		iBytesRead += totalSectionLength;
-		if (aStream instanceof PeekInputStream && totalSectionLength > AVG_XREF_SEC_LENGTH)
-			((PeekInputStream) aStream).increasePeekBuffer(totalSectionLength - AVG_XREF_SEC_LENGTH);
 		int uncompressedLength = readUInt32(aStream);
 		int expectedCount = totalSectionLength;
 
@@ -622,7 +704,7 @@ public class Loader {
 
 		if (objectType == 255) {
 			String xref = readString(aStream);
-			newObject = (new Loader(iFileHistory, iResourceName)).loadFromStream(xref)[0];
+			newObject = (new Loader(iFileHistory, iResourceName, iIncremental)).loadFromStream(xref)[0];
 		} else {
 			throw new IOException("Invalid external section [" + iResourceName + "].");
 		}
@@ -707,18 +789,6 @@ public class Loader {
 		return result.toString();
 	}
 
-	/**
-	 * Solve an identifier of the given data
-	 *
-	 * @param aStream Stream
-	 * @return solved identifier.
-	 */
-	private int getIdentifierType(InputStream aStream) throws IOException {
-		byte[] data = new byte[MAX_IDENTIFIER_LENGTH];
-		aStream.read(data);
-		return getIdentifierType(data, 0);
-	}
-
 	/**
 	 * Solve an identifier of the given data
 	 *
@@ -814,6 +884,14 @@ public class Loader {
 		return is;
 	}
 
+	// returns the absolute form of the specified file or URI
+	private String getResourceUri(String name) {
+		if (name.indexOf(':') != -1 || name.charAt(0) == '/' || iParentResourceName == null) {
+			return name;
+		}
+		return iParentResourceName.substring(0, iParentResourceName.lastIndexOf('/') + 1) + name;
+	}
+
 	// returns a stream built from the specified file or URI
 	private InputStream getInputStream(String name) throws IOException {
 		if (name.indexOf(':') != -1)   // absolute URI reference
@@ -826,7 +904,7 @@ public class Loader {
 			return (ContextHolder.getResourceAsStream(null, name));
 		}
 
-		String uri = iParentResourceName.substring(0, iParentResourceName.lastIndexOf('/') + 1) + name;
+		String uri = getResourceUri(name);
 
 		if (uri.charAt(0) == '/') {
 			return (ContextHolder.getResourceAsStream(null, uri));
@@ -835,65 +913,6 @@ public class Loader {
 		}
 	}
 
-	class PeekInputStream extends InputStream {
-		private int[] iPeekBuffer;
-		private InputStream iStream;
-		private int iBuffered;
-		private int iCounter;
-
-		PeekInputStream(InputStream aStream, int aLength) {
-			iStream = aStream;
-			iPeekBuffer = new int[aLength];
-		}
-
-		@Override
-		public int read() throws IOException {
-			if (iCounter < iBuffered) {
-				return iPeekBuffer[iCounter++];
-			}
-
-			int nv = iStream.read();
-
-			if (iBuffered < iPeekBuffer.length) {
-				iPeekBuffer[iBuffered] = nv;
-				iBuffered++;
-			}
-
-			iCounter++;
-			return nv;
-		}
-
-		public void increasePeekBuffer(int aLength) {
-			int[] temp = new int[iPeekBuffer.length + aLength];
-			System.arraycopy(iPeekBuffer, 0, temp, 0, iBuffered);
-			iPeekBuffer = temp;
-		}
-
-		@Override
-		public int available() throws IOException {
-			if (iCounter < iBuffered) {
-				return iBuffered - iCounter + iStream.available();
-			}
-			return iStream.available();
-		}
-
-		@Override
-		public void close() {
-			try {
-				iStream.close();
-			} catch (IOException ioe) {
-				// Intentionally left empty
-			}
-		}
-
-		public void rewind() throws IOException {
-			if (iCounter > iBuffered) {
-				throw new IOException("Peek buffer overrun.");
-			}
-			iCounter = 0;
-		}
-	}
-
 	class CountedInputStream extends InputStream {
 		private InputStream iStream;
 		private int iCounter;
@@ -34,12 +34,12 @@ public class AndroidPlayer extends MediaPlayer {
 	}
 
 	@Override
-	public void setDataSource(String path) throws IOException, IllegalArgumentException, IllegalStateException, SecurityException {
+	public synchronized void setDataSource(String path) throws IOException, IllegalArgumentException, IllegalStateException, SecurityException {
 		this.path = path;
 	}
 
 	@Override
-	public void seekTo(int msec) throws IllegalStateException {
+	public synchronized void seekTo(int msec) throws IllegalStateException {
 		if (loaded) {
 			super.seekTo(msec);
 		}
@@ -47,7 +47,7 @@ public class AndroidPlayer extends MediaPlayer {
 	}
 
 	@Override
-	public int getCurrentPosition() {
+	public synchronized int getCurrentPosition() {
 		if (loaded) {
 			return super.getCurrentPosition();
 		} else {
@@ -56,7 +56,7 @@ public class AndroidPlayer extends MediaPlayer {
 	}
 
 	@Override
-	public int getDuration() {
+	public synchronized int getDuration() {
 		if (loaded) {
 			return super.getDuration();
 		} else {
@@ -65,7 +65,7 @@ public class AndroidPlayer extends MediaPlayer {
 	}
 
 	@Override
-	public void setLooping(boolean looping) {
+	public synchronized void setLooping(boolean looping) {
 		if (loaded) {
 			super.setLooping(looping);
 		}
@@ -73,7 +73,7 @@ public class AndroidPlayer extends MediaPlayer {
 	}
 
 	@Override
-	public void setVolume(float leftVolume, float rightVolume) {
+	public synchronized void setVolume(float leftVolume, float rightVolume) {
 		if (loaded) {
 			super.setVolume(leftVolume, rightVolume);
 		}
@@ -82,20 +82,38 @@ public class AndroidPlayer extends MediaPlayer {
 	}
 
 	@Override
-	public void start() throws IllegalStateException {
+	public synchronized void start() throws IllegalStateException {
 		load();
 		timePos = 0;
 		super.start();
 	}
 
 	@Override
-	public void reset() {
+	public synchronized void reset() {
 		if (loaded) {
 			super.reset();
 			loaded = false;
 		}
 	}
 
+	/**
+	 * Releases the native resources, keeping the data source and the position.
+	 */
+	public synchronized void unload() {
+		if (loaded) {
+			timePos = super.getCurrentPosition();
+			super.reset();
+			loaded = false;
+		}
+	}
+
+	/**
+	 * Prepares the native player in advance, {@link #start()} does it otherwise.
+	 */
+	public synchronized void preload() {
+		load();
+	}
+
 	private void load() {
 		if (!loaded) {
 			try {
@@ -16,23 +16,46 @@
 
 package javax.microedition.media;
 
+import android.util.Log;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.microedition.amms.control.PanControl;
 import javax.microedition.amms.control.audioeffect.EqualizerControl;
 import javax.microedition.media.control.VolumeControl;
+import javax.microedition.shell.ThreadPolicy;
 
 public class BasePlayer implements Player, VolumeControl, PanControl {
+	private static final String TAG = BasePlayer.class.getName();
+	private static final boolean PREPARE_ASYNC = !Boolean.getBoolean("media.prefetch.disable");
+	private static final ExecutorService preparer = Executors.newFixedThreadPool(2, r -> {
+		Thread thread = new Thread(() -> {
+			ThreadPolicy.apply(ThreadPolicy.BACKGROUND);
+			r.run();
+		}, "MIDletPlayerPrepare");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	private TimeBase timeBase;
 	protected int state;
 	private int loopCount;
 
 	private final ArrayList<PlayerListener> listeners;
+	private final PlayerEventDispatcher dispatcher;
 	private final HashMap<String, Control> controls;
 	private boolean mute;
 	private int level, pan;
+	/** Background realize and prefetch started by {@link #prepareAsync()} */
+	private Future<?> preparing;
+	/** The last step done in the background, not yet seen by the state machine */
+	private int prepared = UNREALIZED;
 
 	public BasePlayer() {
 		state = UNREALIZED;
@@ -45,6 +68,7 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 		InternalEqualizer equalizer = new InternalEqualizer();
 
 		listeners = new ArrayList<>();
+		dispatcher = new PlayerEventDispatcher(this);
 		controls = new HashMap<>();
 
 		controls.put(VolumeControl.class.getName(), this);
@@ -70,7 +94,14 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 		}
 
 		if (state == STARTED && loopCount != -1) {
-			doStart();
+			try {
+				doStart();
+			} catch (MediaException e) {
+				Log.w(TAG, "Can't restart player", e);
+				state = PREFETCHED;
+				postEvent(PlayerListener.ERROR, e.getMessage());
+				return;
+			}
 			postEvent(PlayerListener.STARTED, new Long(getMediaTime()));
 		}
 	}
@@ -105,10 +136,62 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 	}
 
 	public synchronized void postEvent(String event, Object eventData) {
-		for (PlayerListener listener : listeners) {
-			// Callbacks should be async
-			Runnable r = () -> listener.playerUpdate(this, event, eventData);
-			(new Thread(r, "MIDletPlayerCallback")).start();
+		for (int i = 0, size = listeners.size(); i < size; i++) {
+			// Callbacks should be async, but in order
+			dispatcher.post(listeners.get(i), event, eventData);
+		}
+	}
+
+	/**
+	 * Starts realizing and prefetching the player in the background, so that
+	 * {@link #realize()}, {@link #prefetch()} and {@link #start()} only wait for the work
+	 * that is not done yet. The state of the player does not change, errors are reported
+	 * by {@link #realize()} which repeats the failed step.
+	 */
+	synchronized void prepareAsync() {
+		if (!PREPARE_ASYNC || state != UNREALIZED || preparing != null) {
+			return;
+		}
+		preparing = preparer.submit(this::prepare);
+	}
+
+	private void prepare() {
+		try {
+			doRealize();
+		} catch (Exception e) {
+			Log.w(TAG, "Background realize failed", e);
+			return;
+		}
+		prepared = REALIZED;
+		try {
+			doPrefetch();
+		} catch (Exception e) {
+			Log.w(TAG, "Background prefetch failed", e);
+			return;
+		}
+		prepared = PREFETCHED;
+	}
+
+	private void awaitPrepared() {
+		Future<?> task = preparing;
+		if (task == null) {
+			return;
+		}
+		preparing = null;
+		boolean interrupted = false;
+		while (true) {
+			try {
+				task.get();
+				break;
+			} catch (InterruptedException e) {
+				// the player must not be used by two threads at once
+				interrupted = true;
+			} catch (ExecutionException e) {
+				break;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -117,11 +200,16 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 		checkClosed();
 
 		if (state == UNREALIZED) {
-			try {
-				doRealize();
-			} catch (IOException e) {
-				throw new MediaException(e.getMessage());
+			long start = MediaStats.now();
+			awaitPrepared();
+			if (prepared == UNREALIZED) {
+				try {
+					doRealize();
+				} catch (IOException e) {
+					throw new MediaException(e.getMessage());
+				}
 			}
+			MediaStats.record(MediaStats.REALIZE, start);
 
 			state = REALIZED;
 		}
@@ -130,29 +218,36 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 	@Override
 	public synchronized void prefetch() throws MediaException {
 		checkClosed();
+		long start = MediaStats.now();
 
 		if (state == UNREALIZED) {
 			realize();
 		}
 
 		if (state == REALIZED) {
-			try {
-				doPrefetch();
-			} catch (Exception e) {
-				e.printStackTrace();
+			if (prepared != PREFETCHED) {
+				try {
+					doPrefetch();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			}
+			prepared = UNREALIZED;
 			state = PREFETCHED;
+			MediaStats.record(MediaStats.PREFETCH, start);
 		}
 	}
 
 	@Override
 	public synchronized void start() throws MediaException {
+		long start = MediaStats.now();
 		prefetch();
 
 		if (state == PREFETCHED) {
 			doStart();
 
 			state = STARTED;
+			MediaStats.record(MediaStats.START, start);
 			postEvent(PlayerListener.STARTED, new Long(getMediaTime()));
 		}
 	}
@@ -187,6 +282,7 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 	@Override
 	public synchronized void close() {
 		if (state != CLOSED) {
+			awaitPrepared();
 			deallocate();
 			doClose();
 
@@ -376,7 +472,7 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 	public void doPrefetch()  throws IOException {
 	}
 
-	public void doStart() {
+	public void doStart() throws MediaException {
 	}
 
 	public void doStop() {
@@ -388,7 +484,7 @@ public class BasePlayer implements Player, VolumeControl, PanControl {
 	public void doReset() {
 	}
 
-	public void doSetMediaTime(long usec) {
+	public void doSetMediaTime(long usec) throws MediaException {
 	}
 
 	public long doGetMediaTime() {
@@ -26,6 +26,7 @@ import com.arthenica.mobileffmpeg.FFprobe;
 import com.arthenica.mobileffmpeg.MediaInformation;
 import com.arthenica.mobileffmpeg.StreamInformation;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,22 +36,68 @@ import javax.microedition.media.protocol.DataSource;
 import javax.microedition.media.protocol.SourceStream;
 import javax.microedition.util.ContextHolder;
 
+import ru.playsoftware.j2meloader.util.IOUtils;
+
 public class InternalDataSource extends DataSource {
 	private static final String TAG = InternalDataSource.class.getName();
 
 	private File mediaFile;
 	private String type;
+	private boolean cached;
 
 	public InternalDataSource(InputStream stream, String type) throws IllegalArgumentException, IOException {
 		super(null);
 
 		String extension = "." + MimeTypeMap.getSingleton().getExtensionFromMimeType(type);
-		this.mediaFile = File.createTempFile("media", extension, ContextHolder.getCacheDir());
 		this.type = type;
 
-		final RandomAccessFile raf = new RandomAccessFile(mediaFile, "rw");
+		File cacheDir = MediaCache.getDir();
+		if (cacheDir == null) {
+			this.mediaFile = File.createTempFile("media", extension, ContextHolder.getCacheDir());
+			write(stream, mediaFile);
+			convert();
+			return;
+		}
 
-		final String name = mediaFile.getName();
+		byte[] data;
+		try {
+			data = IOUtils.toByteArray(stream);
+		} finally {
+			stream.close();
+		}
+		String key = MediaCache.getKey(data);
+		if (key == null) {
+			this.mediaFile = File.createTempFile("media", extension, ContextHolder.getCacheDir());
+			write(new ByteArrayInputStream(data), mediaFile);
+			convert();
+			return;
+		}
+		String name = key + extension;
+		File file = MediaCache.acquire(cacheDir, name);
+		if (file != null) {
+			Log.d(TAG, "Media cache hit: " + file.getName());
+			this.mediaFile = file;
+			this.cached = true;
+			return;
+		}
+
+		// prepare the file under a temporary name, so that a partial one is never reused
+		this.mediaFile = File.createTempFile(MediaCache.TEMP_PREFIX, extension, cacheDir);
+		write(new ByteArrayInputStream(data), mediaFile);
+		convert();
+		File target = new File(cacheDir, mediaFile.getName().endsWith(MediaCache.CONVERTED_SUFFIX) ?
+				name + MediaCache.CONVERTED_SUFFIX : name);
+		if (mediaFile.renameTo(target)) {
+			mediaFile = target;
+			cached = true;
+			MediaCache.add(cacheDir, target);
+		}
+	}
+
+	private static void write(InputStream stream, File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		final String name = file.getName();
 		Log.d(TAG, "Starting media pipe: " + name);
 
 		int length = stream.available();
@@ -77,16 +124,18 @@ public class InternalDataSource extends DataSource {
 		} finally {
 			stream.close();
 		}
+	}
 
+	private void convert() {
 		try {
-			convert();
+			probeAndConvert();
 		} catch (Throwable e) {
 			// Thrown on fake Oppo devices
 			e.printStackTrace();
 		}
 	}
 
-	private void convert() {
+	private void probeAndConvert() {
 		MediaInformation mediaInformation = FFprobe.getMediaInformation(mediaFile.getPath());
 		if (mediaInformation != null) {
 			StreamInformation streamInformation = mediaInformation.getStreams().get(0);
@@ -122,7 +171,10 @@ public class InternalDataSource extends DataSource {
 
 	@Override
 	public void disconnect() {
-		if (mediaFile.delete()) {
+		if (cached) {
+			cached = false;
+			MediaCache.release(mediaFile);
+		} else if (mediaFile.delete()) {
 			Log.d(TAG, "Temp file deleted: " + mediaFile.getAbsolutePath());
 		}
 	}
@@ -16,298 +16,372 @@
 
 package javax.microedition.media;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
-
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Converts SMAF (.mmf) files to standard MIDI files.
+ * <p>
+ * The sequence data chunk is converted in one pass: events are written as they are parsed,
+ * note offs wait in a small queue ordered by time until the following events pass them.
+ * Converted files are cached by the SHA-1 of the SMAF data, the cache is limited by
+ * the {@code media.mmf.cache.budget} system property, in kilobytes, 0 disables it.
+ */
 public class MMFConverter {
 	static final byte FORMAT_TYPE_HANDY_PHONE = 0x00;
 	static final byte FORMAT_TYPE_MOBILE_STANDARD_COMPRESS = 0x01;
 	static final byte FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS = 0x02;
 
-	private abstract static class TrackEvent {
-		int timestamp;
+	private static final int DEFAULT_CACHE_BUDGET_KB = 2048;
+	private static final int TIME_BASE = 480;
 
-		TrackEvent(int timestamp) {
-			this.timestamp = timestamp;
-		}
+	private static final long cacheBudget = Integer.getInteger("media.mmf.cache.budget",
+			DEFAULT_CACHE_BUDGET_KB) * 1024L;
+	/** Access-ordered, so that iteration starts from the least recently used entry */
+	private static final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private static long cacheSize;
 
-		public int getTimestamp() {
-			return timestamp;
-		}
+	private byte[] data;
+	private int pos;
+	private Output out;
 
-		abstract void output(DataOutputStream dos, int currentTime) throws IOException;
-	}
+	/** Pending note offs: time, then the order of insertion, then the note */
+	private long[] noteOffs = new long[16];
+	private int noteOffCount;
+	private int noteOffCounter;
+	private int lastTime;
 
-	private static class NOPMessage extends TrackEvent {
-		public NOPMessage(int timestamp) {
-			super(timestamp);
-		}
+	int timeBaseD;
+	int timeBaseG;
 
-		@Override
-		void output(DataOutputStream dos, int currentTime) throws IOException {
-			System.out.println(String.format("timestamp: %d, NOP", timestamp));
+	public byte[] convertToMDI(byte[] data) throws Exception {
+		String key = cacheBudget > 0 ? MediaCache.getKey(data) : null;
+		if (key != null) {
+			synchronized (cache) {
+				byte[] midi = cache.get(key);
+				if (midi != null) {
+					return midi.clone();
+				}
+			}
 		}
+		long start = MediaStats.now();
+		byte[] midi = convert(data);
+		MediaStats.record(MediaStats.CONVERT_MMF, start, data.length);
+		if (key != null && midi.length <= cacheBudget) {
+			synchronized (cache) {
+				byte[] old = cache.put(key, midi.clone());
+				if (old != null) {
+					cacheSize -= old.length;
+				}
+				cacheSize += midi.length;
+				Iterator<byte[]> iterator = cache.values().iterator();
+				while (cacheSize > cacheBudget && iterator.hasNext()) {
+					cacheSize -= iterator.next().length;
+					iterator.remove();
+				}
+			}
+		}
+		return midi;
 	}
 
-	private class EOSMessage extends TrackEvent {
-		public EOSMessage(int timestamp) {
-			super(timestamp);
+	private byte[] convert(byte[] data) throws Exception {
+		this.data = data;
+		pos = 0;
+		expectSignature("MMMD", 4);
+		readInt();
+		expectSignature("CNTI", 4);
+		skipChunk(readInt());
+		expectSignature("OPDA", 4);
+		skipChunk(readInt());
+		expectSignature("MTR", 3);
+		int size = readInt();
+		if (size < 0 || pos + size > data.length) {
+			throw new Exception("blockSize does not match");
 		}
-
-		@Override
-		void output(DataOutputStream dos, int currentTime) throws IOException {
-			writeVariableLengthValue(timestamp - currentTime, dos);
-			dos.write(new byte[]{(byte) 0xFF, 0x2F, 0x00});
-			System.out.println(String.format("timestamp: %d, EOS", timestamp));
+		byte[] midi = parseMTR(pos + size);
+		if (midi == null) {
+			throw new Exception("track is not found");
 		}
+		return midi;
 	}
 
-	private class NoteMessage extends TrackEvent {
-		int channel;
-		int noteNumber;
-		int keyVelocity;
-		int gateTime;
-		boolean noteOn;
-
-		public NoteMessage(int timestamp, boolean noteOn, int channel, int noteNumber, int keyVelocity, int gateTime) {
-			super(timestamp);
-			this.channel = channel;
-			this.noteOn = noteOn;
-			this.noteNumber = noteNumber;
-			this.keyVelocity = keyVelocity;
-			this.gateTime = gateTime;
-		}
-
-		void output(DataOutputStream dos, int currentTime) throws IOException {
-			// if (channel == 1) return;
-			writeVariableLengthValue(timestamp - currentTime, dos);
-			if (noteOn) {
-				dos.writeByte(0x9F & (0xF0 | channel));
-			} else {
-				dos.writeByte(0x8F & (0xF0 | channel));
+	/**
+	 * Checks the first length bytes of the 4 byte chunk signature.
+	 */
+	private void expectSignature(String signature, int length) throws Exception {
+		require(4);
+		for (int i = 0; i < length; i++) {
+			if (data[pos + i] != signature.charAt(i)) {
+				throw new Exception("Signature is not match " + signature + ": "
+						+ Arrays.toString(Arrays.copyOfRange(data, pos, pos + 4)));
 			}
-			dos.writeByte(noteNumber);
-			dos.writeByte(keyVelocity);
 		}
+		pos += 4;
 	}
 
-	private static class ControlChange extends TrackEvent {
-		int channel;
-		int controlNumber;
-		int controlValue;
+	private void skipChunk(int size) throws Exception {
+		if (size < 0 || pos + size > data.length) {
+			throw new Exception("Malformed chunk size: " + size);
+		}
+		pos += size;
+	}
 
-		public ControlChange(int timestamp, int channel, int controlNumber, int controlValue) {
-			super(timestamp);
-			this.channel = channel;
-			this.controlNumber = controlNumber;
-			this.controlValue = controlValue;
+	private byte[] parseMTR(int end) throws Exception {
+		require(4);
+		byte formatType = data[pos++];
+		pos++; // sequence type
+		timeBaseD = convertTimebase(data[pos++]);
+		timeBaseG = convertTimebase(data[pos++]);
+		if (formatType == FORMAT_TYPE_MOBILE_STANDARD_COMPRESS
+				|| formatType == FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS) {
+			// 16 byte channel status
+			pos += 16;
+		} else {
+			pos += 2;
 		}
 
-		@Override
-		void output(DataOutputStream dos, int currentTime) throws IOException {
-			// not implemented
+		while (pos + 8 <= end) {
+			// Mspl (Seek & Phrase Info Chunk)
+			// Mtsu (Setup Data Chunk)
+			// Mtsq (Sequence Data Chunk)
+			// Mtsp (Stream PCM Data Chunk)
+			boolean sequence = data[pos] == 'M' && data[pos + 1] == 't'
+					&& data[pos + 2] == 's' && data[pos + 3] == 'q';
+			pos += 4;
+			int chunkSize = readInt();
+			int chunkEnd = pos + chunkSize;
+			if (chunkSize < 0 || chunkEnd > end) {
+				throw new Exception("chunkSize is not match: " + chunkSize);
+			}
+			if (sequence) {
+				return convertSequenceDataChunk(chunkEnd);
+			}
+			pos = chunkEnd;
 		}
+		return null;
 	}
 
-	private class ProgramChange extends TrackEvent {
-		int channel;
-		int programNumber;
-
-		public ProgramChange(int timestamp, int channel, int programNumber) {
-			super(timestamp);
-			this.channel = channel;
-			this.programNumber = programNumber;
+	private byte[] convertSequenceDataChunk(int end) throws Exception {
+		out = new Output(end - pos + (end - pos >> 1) + 64);
+		out.write("MThd");
+		out.writeInt(6);
+		out.writeShort(1); // format
+		out.writeShort(1); // track num
+		out.writeShort(TIME_BASE); // time (defined by tempo and time)
+		out.write("MTrk");
+		int lengthPos = out.size;
+		out.writeInt(0);
+
+		// set tempo, a tick is timeBaseD milliseconds
+		int tempo = TIME_BASE * 1000 * timeBaseD;
+		out.write(0x00);
+		out.write(0xFF);
+		out.write(0x51);
+		out.write(0x03);
+		out.write(tempo >>> 16 & 0xFF);
+		out.write(tempo >>> 8 & 0xFF);
+		out.write(tempo & 0xFF);
+
+		noteOffCount = 0;
+		noteOffCounter = 0;
+		lastTime = 0;
+		int[] velocities = new int[16];
+		Arrays.fill(velocities, -1);
+		int globalTime = 0;
+		while (pos < end) {
+			int duration = data[pos] & 0x7F;
+			if ((data[pos++] & 0x80) != 0) {
+				require(1);
+				duration = (duration << 7) + (data[pos++] & 0x7F);
+			}
+			require(1);
+			int eventHeader = data[pos++] & 0xFF;
+			globalTime += duration;
+			flushNoteOffs(globalTime);
+			int channel = eventHeader & 0x0F;
+			switch (eventHeader >>> 4) {
+				case 0x8: {
+					// Note Message with no velocity
+					require(1);
+					// notenumber 60 equals center C
+					int noteNumber = data[pos++] & 0x7F;
+					int gateTime = readVariableLengthValue();
+					if (velocities[channel] < 0) {
+						velocities[channel] = 64;
+					}
+					noteOn(globalTime, channel, noteNumber, velocities[channel], gateTime);
+					break;
+				}
+				case 0x9: {
+					// Note Message with velocity
+					require(2);
+					int noteNumber = data[pos++] & 0x7F;
+					int keyVelocity = data[pos++] & 0x7F;
+					int gateTime = readVariableLengthValue();
+					velocities[channel] = keyVelocity;
+					noteOn(globalTime, channel, noteNumber, keyVelocity, gateTime);
+					break;
+				}
+				case 0xB:
+					// Control Change, not implemented
+				case 0xE:
+					// Pitch Bend, not implemented
+					require(2);
+					pos += 2;
+					break;
+				case 0xC: {
+					// Program Change
+					require(1);
+					writeEvent(globalTime, 0xC0 | channel);
+					out.write(data[pos++] & 0x7F);
+					break;
+				}
+				case 0xF: {
+					if (eventHeader == 0xF0) {
+						// System Exclusive
+						int length = readVariableLengthValue();
+						require(length);
+						pos += length;
+						if (length == 0 || data[pos - 1] != (byte) 0xF7) {
+							throw new Exception("Malformed");
+						}
+					} else if (eventHeader == 0xFF) {
+						// EOS or NOP
+						require(1);
+						int next = data[pos++];
+						if (next == 0x2F) {
+							require(1);
+							if (data[pos++] != 0x00) {
+								throw new Exception("Not Implemented");
+							}
+							pos = end;
+						} else if (next != 0x00) {
+							throw new Exception("Not Implemented");
+						}
+					}
+					// else Reserved
+					break;
+				}
+				default:
+					// 0xA and 0xD are reserved
+					throw new Exception("Not Implemented: " + Integer.toHexString(eventHeader >>> 4));
+			}
 		}
+		flushNoteOffs(Integer.MAX_VALUE);
+		// EOS
+		writeVariableLengthValue(Math.max(globalTime - lastTime, 0));
+		out.write(0xFF);
+		out.write(0x2F);
+		out.write(0x00);
+
+		byte[] midi = out.toByteArray();
+		int trackLength = midi.length - lengthPos - 4;
+		midi[lengthPos] = (byte) (trackLength >>> 24);
+		midi[lengthPos + 1] = (byte) (trackLength >>> 16);
+		midi[lengthPos + 2] = (byte) (trackLength >>> 8);
+		midi[lengthPos + 3] = (byte) trackLength;
+		out = null;
+		data = null;
+		return midi;
+	}
 
-		@Override
-		void output(DataOutputStream dos, int currentTime) throws IOException {
-			writeVariableLengthValue(timestamp - currentTime, dos);
-			dos.writeByte(0xCF & ((byte) 0xF0 | channel));
-			dos.writeByte(programNumber);
+	private void noteOn(int time, int channel, int note, int velocity, int gateTime) {
+		writeEvent(time, 0x90 | channel);
+		out.write(note);
+		out.write(velocity);
+		if (noteOffCount == noteOffs.length) {
+			noteOffs = Arrays.copyOf(noteOffs, noteOffCount * 2);
+		}
+		// note offs with the same time are written in the order of their note ons
+		long key = (long) (time + gateTime) << 32 | (long) (noteOffCounter++ & 0xFFFFF) << 12 | channel << 8 | note;
+		int i = noteOffCount++;
+		// sift up
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (noteOffs[parent] <= key) {
+				break;
+			}
+			noteOffs[i] = noteOffs[parent];
+			i = parent;
 		}
+		noteOffs[i] = key;
 	}
 
-	private static class PitchBend extends TrackEvent {
-		int channel;
-		int pitchBendChangeLSB;
-		int pitchBendChangeMSB;
+	/**
+	 * Writes the pending note offs up to the given time.
+	 */
+	private void flushNoteOffs(int time) {
+		while (noteOffCount > 0 && (int) (noteOffs[0] >>> 32) <= time) {
+			long key = noteOffs[0];
+			long last = noteOffs[--noteOffCount];
+			// sift down
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= noteOffCount) {
+					break;
+				}
+				if (child + 1 < noteOffCount && noteOffs[child + 1] < noteOffs[child]) {
+					child++;
+				}
+				if (last <= noteOffs[child]) {
+					break;
+				}
+				noteOffs[i] = noteOffs[child];
+				i = child;
+			}
+			noteOffs[i] = last;
 
-		public PitchBend(int channel, int pitchBendChangeLSB, int pitchBendChangeMSB) {
-			super(0);
-			this.channel = channel;
-			this.pitchBendChangeLSB = pitchBendChangeLSB;
-			this.pitchBendChangeMSB = pitchBendChangeMSB;
+			writeEvent((int) (key >>> 32), 0x80 | (int) (key >> 8 & 0x0F));
+			out.write((int) (key & 0x7F));
+			out.write(0);
 		}
+	}
+
+	private void writeEvent(int time, int status) {
+		writeVariableLengthValue(time - lastTime);
+		lastTime = time;
+		out.write(status);
+	}
 
-		@Override
-		void output(DataOutputStream dos, int currentTime) {
-			// not implemented
+	private void require(int count) throws Exception {
+		if (pos + count > data.length) {
+			throw new Exception("Unexpected end of data");
 		}
 	}
 
+	private int readInt() throws Exception {
+		require(4);
+		int value = (data[pos] & 0xFF) << 24 | (data[pos + 1] & 0xFF) << 16
+				| (data[pos + 2] & 0xFF) << 8 | data[pos + 3] & 0xFF;
+		pos += 4;
+		return value;
+	}
 
-	int readVariableLengthValue(DataInputStream dis) throws IOException {
+	int readVariableLengthValue() throws Exception {
 		int result = 0;
 		boolean readNext = true;
 		while (readNext) {
-			byte next = dis.readByte();
-			result = (result << 7) + (next & (byte) 0x7F);
-			readNext = (next & (byte) 0x80) == (byte) 0x80;
+			require(1);
+			byte next = data[pos++];
+			result = (result << 7) + (next & 0x7F);
+			readNext = (next & 0x80) != 0;
 		}
 		return result;
 	}
 
-	void writeVariableLengthValue(int val, DataOutputStream dos) throws IOException {
-		ArrayList<Byte> bytes = new ArrayList<>();
-		int tmp = val;
-		bytes.add((byte) (tmp & 0x7F)); // 0b01111111
-		while ((tmp = tmp >>> 7) > 0) {
-			bytes.add((byte) ((tmp & 0x7F) | (byte) 0x80));
+	void writeVariableLengthValue(int val) {
+		int shift = 28;
+		while (shift > 0 && (val >>> shift) == 0) {
+			shift -= 7;
 		}
-		Collections.reverse(bytes);
-		for (Byte byte1 : bytes) {
-			dos.writeByte(byte1);
+		for (; shift > 0; shift -= 7) {
+			out.write(val >>> shift & 0x7F | 0x80);
 		}
+		out.write(val & 0x7F);
 	}
 
-	String toHex(byte v) {
-		String result = "0x";
-		char[] hexArray = "0123456789ABCDEF".toCharArray();
-		int v_ = v & 0xFF;
-		result += hexArray[v_ >>> 4];
-		result += hexArray[v_ & 0x0F];
-		return result;
-	}
-
-	ArrayList<TrackEvent> parseSequenceDataChunk(byte[] data) throws Exception {
-		ArrayList<TrackEvent> result = new ArrayList<>();
-		Map<Integer, Integer> mapVel = new HashMap<>();
-
-		try (ByteArrayInputStream is = new ByteArrayInputStream(data);
-			 DataInputStream dis = new DataInputStream(is)) {
-			// parse Duration;
-			byte[] firstByte = new byte[1];
-			int globalTime = 0;
-			while (dis.read(firstByte, 0, 1) == 1) {
-				int duration = firstByte[0] & 0x7F;
-				if ((firstByte[0] & 0b10000000) == 0b10000000) {
-					// MSB = 1
-					duration = (duration << 7) + (dis.readByte() & 0x7F);
-				}
-
-				// parse Event
-				byte eventHeader = dis.readByte();
-				globalTime += duration;
-				int upper4bit = (eventHeader & 0xFF) >>> 4;
-				switch (upper4bit) {
-					case 0x8: {
-						// Note Message with no velocity
-						int channel = eventHeader & (byte) 0x0F;
-						int noteNumber = dis.readByte() & (byte) 0x7F;
-						// notenumber 60 equals center C
-						int gateTime = readVariableLengthValue(dis);
-						Integer prevVel = mapVel.get(channel);
-						if (prevVel == null) {
-							prevVel = 64;
-							mapVel.put(channel, prevVel);
-						}
-						result.add(new NoteMessage(globalTime, true, channel, noteNumber, prevVel, gateTime));
-						result.add(new NoteMessage(globalTime + gateTime, false, channel, noteNumber, 0, gateTime));
-						break;
-					}
-					case 0x9: {
-						// Note Message with velocity
-						int channel = eventHeader & 0x0F;
-						int noteNumber = dis.readByte() & 0x7F;
-						int keyVelocity = dis.readByte() & 0x7F;
-						int gateTime = readVariableLengthValue(dis);
-						mapVel.put(channel, keyVelocity);
-						result.add(new NoteMessage(globalTime, true, channel, noteNumber, keyVelocity, gateTime));
-						result.add(new NoteMessage(globalTime + gateTime, false, channel, noteNumber, 0, gateTime));
-						break;
-					}
-					case 0xA: {
-						// Reserved
-						throw new Exception("Not Implemented");
-						// break;
-					}
-					case 0xB: {
-						// Control Change
-						int channel = eventHeader & 0x0F;
-						int controlNumber = dis.readByte() & 0x7F;
-						int controlValue = dis.readByte() & 0x7F;
-						result.add(new ControlChange(globalTime, channel, controlNumber, controlValue));
-						break;
-					}
-					case 0xC: {
-						// Program Change
-						int channel = eventHeader & 0x0F;
-						int programNumber = dis.readByte() & 0x7F;
-						result.add(new ProgramChange(globalTime, channel, programNumber));
-						break;
-					}
-					case 0xD: {
-						// Reserved
-						throw new Exception("Not Implemented");
-						// break;
-					}
-					case 0xE: {
-						// Pitch Bend
-						int channel = eventHeader & 0x0F;
-						int pitchBendChangeLSB = dis.readByte() & 0x7F;
-						int pitchBendChangeMSB = dis.readByte() & 0x7F;
-						result.add(new PitchBend(globalTime, pitchBendChangeLSB, pitchBendChangeMSB));
-						break;
-					}
-					case 0xF: {
-						if (eventHeader == (byte) 0xF0) {
-							// System Exclusive
-							int x = readVariableLengthValue(dis);
-							byte[] dataToEnd = new byte[x];
-							if (dis.read(dataToEnd, 0, x) != x || dataToEnd[x - 1] != (byte) 0xF7) {
-								throw new Exception("Malformed");
-							}
-						} else if (eventHeader == (byte) 0xFF) {
-							// EOS or NOP
-							byte next = dis.readByte();
-							if ((byte) 0x00 == next) {
-								result.add(new NOPMessage(globalTime));
-							} else if ((byte) 0x2F == next) {
-								if (dis.readByte() == (byte) 0x00) {
-									result.add(new EOSMessage(globalTime));
-								} else {
-									throw new Exception("Not Implemented");
-								}
-							} else {
-								throw new Exception("Not Implemented");
-							}
-						} else {
-							// Reserved
-						}
-						break;
-					}
-					default:
-						throw new Exception("Not Implemented: " + toHex((byte) upper4bit));
-				}
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return result;
-	}
-
-	int timeBaseD;
-	int timeBaseG;
-
 	int convertTimebase(byte timebase) {
 		switch (timebase) {
 			case 0x01:
@@ -330,127 +404,42 @@ public class MMFConverter {
 		}
 	}
 
-	void parseMTR(byte[] data, DataOutputStream dos) throws Exception {
-		try (ByteArrayInputStream is = new ByteArrayInputStream(data);
-			 DataInputStream dis = new DataInputStream(is)) {
-			byte formatType = dis.readByte();
-			byte sequenceType = dis.readByte();
-			this.timeBaseD = convertTimebase(dis.readByte());
-			this.timeBaseG = convertTimebase(dis.readByte());
-
-			byte[] channelStatus;
-			if (formatType == FORMAT_TYPE_MOBILE_STANDARD_COMPRESS
-					|| formatType == FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS) {
-				// read 16byte channel status
-				channelStatus = new byte[16];
-				dis.read(channelStatus, 0, 16);
-			} else {
-				channelStatus = new byte[2];
-				dis.read(channelStatus, 0, 2);
-			}
-
-			byte[] chunkId = new byte[4];
-			while (dis.read(chunkId, 0, 4) == 4) {
-				// Mspl (Seek & Phrase Info Chunk)
-				// Mtsu (Setup Data Chunk)
-				// Mtsq (Sequence Data Chunk)
-				if (Arrays.equals(chunkId, "Mtsq".getBytes())) {
-					int chunkSize = dis.readInt();
-					byte[] chunkDat = new byte[chunkSize];
-					if (dis.read(chunkDat, 0, chunkSize) != chunkSize)
-						throw new Exception("chunkSize is not match: " + chunkSize);
-					ArrayList<TrackEvent> trk = parseSequenceDataChunk(chunkDat);
-					dos.write("MThd".getBytes());
-					dos.writeInt(6);
-					dos.write(new byte[]{0x00, 0x01}); // format
-					dos.write(new byte[]{0x00, 0x01}); // track num
-					dos.write(new byte[]{0x01, (byte) 0xE0}); // time (defined by tempo and time)
-					dos.write("MTrk".getBytes());
-
-					try (ByteArrayOutputStream os = new ByteArrayOutputStream();
-						 DataOutputStream ddos = new DataOutputStream(os)) {
-						// set tempo
-						int timeBase = 480;
-						int tempo = timeBase * 1000 * timeBaseD;
-						ddos.write(new byte[]{0x00, (byte) 0xFF, 0x51, 0x03});
-						ddos.writeByte((tempo >>> 16) & (byte) 0xFF);
-						ddos.writeByte((tempo >>> 8) & (byte) 0xFF);
-						ddos.writeByte((tempo >>> 0) & (byte) 0xFF);
-
-						Collections.sort(trk, (o1, o2) -> o1.getTimestamp() - o2.getTimestamp());
-
-						int globalTime = 0;
-						for (TrackEvent trackEvent : trk) {
-							trackEvent.output(ddos, globalTime);
-							globalTime = trackEvent.getTimestamp();
-						}
-						dos.writeInt(ddos.size());
-						dos.write(os.toByteArray());
-					}
-				} else if (Arrays.equals(chunkId, "MspI".getBytes())) {
-					int chunkSize = dis.readInt();
-					byte[] chunkDat = new byte[chunkSize];
-					if (dis.read(chunkDat, 0, chunkSize) != chunkSize)
-						throw new Exception("chunkSize is not match: " + chunkSize);
-				} else if (Arrays.equals(chunkId, "Mtsu".getBytes())) {
-					int chunkSize = dis.readInt();
-					byte[] chunkDat = new byte[chunkSize];
-					if (dis.read(chunkDat, 0, chunkSize) != chunkSize)
-						throw new Exception("chunkSize is not match: " + chunkSize);
-				}
-				// Mtsp (Stream PCM Data Chunk)
-			}
+	/**
+	 * Unsynchronized byte buffer, sized from the SMAF sequence length.
+	 */
+	private static final class Output {
+		byte[] buf;
+		int size;
 
-		} catch (IOException e) {
-			e.printStackTrace();
+		Output(int capacity) {
+			buf = new byte[capacity];
 		}
-	}
 
-	public byte[] convertToMDI(byte[] data) throws Exception {
-		byte[] magic = new byte[4];
-		try (ByteArrayInputStream is = new ByteArrayInputStream(data);
-			 DataInputStream dis = new DataInputStream(is)) {
-			dis.read(magic, 0, 4);
-			if (!Arrays.equals(magic, "MMMD".getBytes())) {
-				throw new Exception("Signature is not match MMMD: " + Arrays.toString(magic));
-			}
-			dis.readInt();
-			dis.read(magic, 0, 4);
-			if (!Arrays.equals(magic, "CNTI".getBytes())) {
-				throw new Exception("Signature is not match CNTI: " + Arrays.toString(magic));
+		void write(int b) {
+			if (size == buf.length) {
+				buf = Arrays.copyOf(buf, size * 2);
 			}
-			int blockSize = dis.readInt();
-			byte[] cntiBlock = new byte[blockSize];
-			dis.read(cntiBlock, 0, blockSize);
+			buf[size++] = (byte) b;
+		}
 
-			dis.read(magic, 0, 4);
-			if (!Arrays.equals(magic, "OPDA".getBytes())) {
-				throw new Exception("Signature is not match OPDA: " + Arrays.toString(magic));
+		void write(String s) {
+			for (int i = 0; i < s.length(); i++) {
+				write(s.charAt(i));
 			}
-			blockSize = dis.readInt();
-			byte[] blockData = new byte[blockSize];
-			dis.read(blockData, 0, blockSize);
+		}
 
-			dis.read(magic, 0, 4);
-			if (!Arrays.equals(Arrays.copyOf(magic, 3), "MTR".getBytes())) {
-				throw new Exception("Signature is not match MTR: " + new String(magic));
-			}
-			blockSize = dis.readInt();
-			blockData = new byte[blockSize];
-			if (dis.read(blockData, 0, blockSize) != blockSize) {
-				throw new Exception("blockSize does not match");
-			}
-			try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-				 DataOutputStream dos = new DataOutputStream(bos)) {
-				parseMTR(blockData, dos);
-				return bos.toByteArray();
-			}
+		void writeShort(int v) {
+			write(v >>> 8 & 0xFF);
+			write(v & 0xFF);
+		}
 
-		} catch (IOException e) {
-			e.printStackTrace();
+		void writeInt(int v) {
+			writeShort(v >>> 16);
+			writeShort(v & 0xFFFF);
 		}
 
-		throw new Exception("track is not found");
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, size);
+		}
 	}
 }
-
@@ -21,6 +21,7 @@ import android.Manifest;
 import android.os.Build;
 import android.webkit.MimeTypeMap;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
@@ -28,6 +29,7 @@ import java.util.Arrays;
 import javax.microedition.io.Connector;
 import javax.microedition.media.protocol.DataSource;
 import javax.microedition.media.protocol.SourceStream;
+import javax.microedition.media.synth.AudioEngine;
 import javax.microedition.media.tone.ToneManager;
 import javax.microedition.util.ContextHolder;
 
@@ -80,7 +82,9 @@ public class Manager {
 			}
 			SourceStream sourceStream = sourceStreams[0];
 			InputStream stream = new InternalSourceStream(sourceStream);
-			return new MicroPlayer(new InternalDataSource(stream, type));
+			MicroPlayer player = new MicroPlayer(new InternalDataSource(stream, type));
+			player.prepareAsync();
+			return player;
 		} else {
 			return new BasePlayer();
 		}
@@ -92,7 +96,18 @@ public class Manager {
 		}
 		String[] supportedTypes = getSupportedContentTypes(null);
 		if (type != null && Arrays.asList(supportedTypes).contains(type.toLowerCase())) {
-			return new MicroPlayer(new InternalDataSource(stream, type));
+			long start = MediaStats.now();
+			InternalDataSource source = new InternalDataSource(stream, type);
+			MediaStats.record(MediaStats.DATA_SOURCE, start);
+			BasePlayer player;
+			if (SoundPoolPlayer.isSupported(type, new File(source.getLocator()))) {
+				player = new SoundPoolPlayer(source);
+			} else {
+				player = new MicroPlayer(source);
+			}
+			player.prepareAsync();
+			MediaStats.record(MediaStats.CREATE_PLAYER, start);
+			return player;
 		} else {
 			return new BasePlayer();
 		}
@@ -114,6 +129,10 @@ public class Manager {
 
 	public synchronized static void playTone(int note, int duration, int volume)
 			throws MediaException {
-		ToneManager.play(note, duration, volume);
+		if (AudioEngine.isEnabled()) {
+			ToneGenerator.play(note, duration, volume);
+		} else {
+			ToneManager.play(note, duration, volume);
+		}
 	}
 }
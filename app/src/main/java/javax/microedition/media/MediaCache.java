@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.util.Log;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import javax.microedition.shell.AppClassLoader;
+
+import ru.playsoftware.j2meloader.config.Config;
+
+/**
+ * Persistent cache of media files prepared by {@link InternalDataSource}.
+ * <p>
+ * Files are named by the SHA-1 of the original data and stored in the MIDlet directory,
+ * so the copy, the FFprobe call and the optional conversion are done once per distinct sound.
+ * A converted file is stored with the ".wav" suffix next to the name of the original.
+ * Files are prepared under the {@link #TEMP_PREFIX} prefix and renamed when complete;
+ * such files are skipped by pruning unless they are left over from an interrupted run.
+ * Least recently used files are removed when the total size exceeds the budget
+ * ({@code media.cache.budget} system property, in megabytes, 0 disables the cache).
+ */
+class MediaCache {
+	private static final String TAG = MediaCache.class.getName();
+	private static final int DEFAULT_BUDGET_MB = 32;
+	static final String CONVERTED_SUFFIX = ".wav";
+	static final String TEMP_PREFIX = "tmp-";
+	/** Temporary files older than this are considered abandoned */
+	private static final long TEMP_MAX_AGE = 60 * 60 * 1000;
+
+	private static final long budget = Integer.getInteger("media.cache.budget",
+			DEFAULT_BUDGET_MB) * 1024L * 1024L;
+	/** Files referenced by open data sources, must not be pruned */
+	private static final HashMap<String, Integer> inUse = new HashMap<>();
+	private static File dir;
+
+	static synchronized File getDir() {
+		if (budget <= 0) {
+			return null;
+		}
+		if (dir == null) {
+			File appDir = AppClassLoader.getAppDir();
+			if (appDir == null) {
+				return null;
+			}
+			File file = new File(appDir, Config.MIDLET_MEDIA_CACHE_DIR);
+			if (!file.isDirectory() && !file.mkdirs()) {
+				Log.w(TAG, "Can't create media cache: " + file);
+				return null;
+			}
+			dir = file;
+		}
+		return dir;
+	}
+
+	static String getKey(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the prepared file for the given name, or null if it is not cached yet.
+	 * The returned file is locked until {@link #release(File)} is called.
+	 */
+	static synchronized File acquire(File dir, String name) {
+		File file = new File(dir, name + CONVERTED_SUFFIX);
+		if (!file.isFile()) {
+			file = new File(dir, name);
+			if (!file.isFile()) {
+				return null;
+			}
+		}
+		//noinspection ResultOfMethodCallIgnored
+		file.setLastModified(System.currentTimeMillis());
+		lock(file);
+		return file;
+	}
+
+	/**
+	 * Locks a file that has just been added to the cache and prunes the cache.
+	 */
+	static synchronized void add(File dir, File file) {
+		lock(file);
+		prune(dir);
+	}
+
+	static synchronized void release(File file) {
+		String path = file.getPath();
+		Integer count = inUse.get(path);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			inUse.remove(path);
+		} else {
+			inUse.put(path, count - 1);
+		}
+	}
+
+	private static void lock(File file) {
+		String path = file.getPath();
+		Integer count = inUse.get(path);
+		inUse.put(path, count == null ? 1 : count + 1);
+	}
+
+	private static void prune(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		long size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+		if (size <= budget) {
+			return;
+		}
+		long[] lastModified = new long[files.length];
+		for (int i = 0; i < files.length; i++) {
+			lastModified[i] = files[i].lastModified();
+		}
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+		long tempExpired = System.currentTimeMillis() - TEMP_MAX_AGE;
+		for (int i = 0; i < order.length && size > budget; i++) {
+			File file = files[order[i]];
+			if (inUse.containsKey(file.getPath())) {
+				continue;
+			}
+			if (file.getName().startsWith(TEMP_PREFIX) && lastModified[order[i]] > tempExpired) {
+				// still being written by another data source
+				continue;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				size -= length;
+				Log.d(TAG, "Pruned: " + file.getName());
+			}
+		}
+	}
+}
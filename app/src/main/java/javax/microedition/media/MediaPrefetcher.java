@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.microedition.shell.AppClassLoader;
+import javax.microedition.shell.ThreadPolicy;
+
+/**
+ * Prepares the audio resources of the MIDlet in the {@link MediaCache} at launch
+ * ({@code media.prefetch.resources} system property), so that creating players
+ * for them later does not need to write and convert the media files.
+ */
+public class MediaPrefetcher implements Runnable {
+	private static final String TAG = MediaPrefetcher.class.getName();
+	private static final List<String> EXTENSIONS = Arrays.asList(
+			"wav", "mid", "midi", "mp3", "amr", "aac", "m4a");
+
+	private MediaPrefetcher() {
+	}
+
+	/**
+	 * Starts preparing the resources in the background, must be called after
+	 * the MIDlet class loader is created.
+	 */
+	public static void start() {
+		if (!Boolean.getBoolean("media.prefetch.resources") || MediaCache.getDir() == null) {
+			return;
+		}
+		Thread thread = new Thread(new MediaPrefetcher(), "MIDletMediaPrefetch");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		ThreadPolicy.apply(ThreadPolicy.BACKGROUND);
+		long start = SystemClock.uptimeMillis();
+		int count = 0;
+		MimeTypeMap mimeTypeMap = MimeTypeMap.getSingleton();
+		List<String> supportedTypes = Arrays.asList(Manager.getSupportedContentTypes(null));
+		for (String name : AppClassLoader.getResourceNames()) {
+			String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+			if (!EXTENSIONS.contains(extension)) {
+				continue;
+			}
+			// the cached file is named after the type, as it would be for Manager.createPlayer()
+			String type = mimeTypeMap.getMimeTypeFromExtension(extension);
+			if (type == null || !supportedTypes.contains(type)) {
+				continue;
+			}
+			byte[] data = AppClassLoader.getResourceAsBytes(name);
+			if (data == null) {
+				continue;
+			}
+			try {
+				new InternalDataSource(new ByteArrayInputStream(data), type).disconnect();
+				count++;
+			} catch (Exception e) {
+				Log.w(TAG, "Can't prefetch: " + name, e);
+			}
+		}
+		Log.d(TAG, "Prefetched " + count + " media files in "
+				+ (SystemClock.uptimeMillis() - start) + " ms");
+	}
+}
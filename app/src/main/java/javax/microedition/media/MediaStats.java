@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Timings of the media pipeline, collected when the {@code media.stats} system property is set.
+ * <p>
+ * Each metric keeps the number of calls, the total and the longest time and the number of
+ * processed bytes, so throughput can be computed for conversions. Nothing is recorded
+ * and {@link #now()} does not read the clock when the statistics are disabled.
+ */
+public class MediaStats {
+	private static final String TAG = MediaStats.class.getName();
+	private static final boolean ENABLED = Boolean.getBoolean("media.stats");
+
+	/** Manager.createPlayer() from a stream, including the data source */
+	public static final int CREATE_PLAYER = 0;
+	/** Writing and converting the media file, or finding it in the cache */
+	public static final int DATA_SOURCE = 1;
+	/** Player.realize(), including the wait for background preparation */
+	public static final int REALIZE = 2;
+	/** Player.prefetch(), including realize() */
+	public static final int PREFETCH = 3;
+	/** Player.start(), including prefetch() */
+	public static final int START = 4;
+	/** From starting a synthesizer player to its first sample reaching the speaker */
+	public static final int FIRST_SAMPLE = 5;
+	/** MMFConverter.convertToMDI(), bytes of the SMAF input */
+	public static final int CONVERT_MMF = 6;
+	/** Compiling a tone sequence to MIDI events, bytes of the sequence */
+	public static final int COMPILE_TONE = 7;
+
+	private static final String[] NAMES = {"createPlayer", "dataSource", "realize", "prefetch",
+			"start", "firstSample", "convertMMF", "compileTone"};
+
+	private static final long[] counts = new long[NAMES.length];
+	private static final long[] totals = new long[NAMES.length];
+	private static final long[] maxima = new long[NAMES.length];
+	private static final long[] bytes = new long[NAMES.length];
+
+	private MediaStats() {
+	}
+
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * Returns the start time to pass to {@link #record(int, long)}.
+	 */
+	public static long now() {
+		return ENABLED ? System.nanoTime() : 0;
+	}
+
+	public static void record(int metric, long start) {
+		record(metric, start, 0);
+	}
+
+	public static void record(int metric, long start, long size) {
+		if (!ENABLED) {
+			return;
+		}
+		long time = System.nanoTime() - start;
+		synchronized (MediaStats.class) {
+			counts[metric]++;
+			totals[metric] += time;
+			maxima[metric] = Math.max(maxima[metric], time);
+			bytes[metric] += size;
+		}
+	}
+
+	public static synchronized long getCount(int metric) {
+		return counts[metric];
+	}
+
+	/**
+	 * Returns the average time in microseconds.
+	 */
+	public static synchronized long getAverage(int metric) {
+		return counts[metric] == 0 ? 0 : totals[metric] / counts[metric] / 1000;
+	}
+
+	/**
+	 * Returns the longest time in microseconds.
+	 */
+	public static synchronized long getMaximum(int metric) {
+		return maxima[metric] / 1000;
+	}
+
+	/**
+	 * Returns the processed bytes per second, 0 if the metric does not count bytes.
+	 */
+	public static synchronized long getThroughput(int metric) {
+		return totals[metric] == 0 ? 0 : bytes[metric] * 1000000000L / totals[metric];
+	}
+
+	public static synchronized void reset() {
+		for (int i = 0; i < NAMES.length; i++) {
+			counts[i] = 0;
+			totals[i] = 0;
+			maxima[i] = 0;
+			bytes[i] = 0;
+		}
+	}
+
+	public static synchronized String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < NAMES.length; i++) {
+			if (counts[i] == 0) {
+				continue;
+			}
+			sb.append(String.format(Locale.US, "%s: count=%d, avg=%d us, max=%d us",
+					NAMES[i], counts[i], getAverage(i), getMaximum(i)));
+			if (bytes[i] > 0) {
+				sb.append(String.format(Locale.US, ", %d KB/s", getThroughput(i) / 1024));
+			}
+			sb.append('\n');
+		}
+		if (PlayerEventDispatcher.getDispatchedCount() > 0) {
+			sb.append(String.format(Locale.US, "playerEvents: count=%d, avg=%d us, max=%d us, queued=%d\n",
+					PlayerEventDispatcher.getDispatchedCount(), PlayerEventDispatcher.getAverageLatency(),
+					PlayerEventDispatcher.getMaxLatency(), PlayerEventDispatcher.getQueueDepth()));
+		}
+		return sb.toString();
+	}
+
+	public static void log() {
+		if (ENABLED) {
+			Log.i(TAG, "Media stats:\n" + getSummary());
+		}
+	}
+}
@@ -30,8 +30,13 @@ import javax.microedition.media.protocol.DataSource;
 public class MicroPlayer extends BasePlayer implements MediaPlayer.OnCompletionListener,
 		VolumeControl, PanControl {
 	protected DataSource source;
-	private final MediaPlayer player;
+	private final AndroidPlayer player;
 	private final InternalMetaData metadata;
+	/** Voice stealing order, see {@link VoiceManager} */
+	int priority = VoiceManager.PRIORITY_NORMAL;
+	long lastStart;
+	/** Set by {@link VoiceManager} under its lock while the player is starting */
+	boolean starting;
 
 	public MicroPlayer(DataSource datasource) {
 		player = new AndroidPlayer();
@@ -59,10 +64,19 @@ public class MicroPlayer extends BasePlayer implements MediaPlayer.OnCompletionL
 		retriever.setDataSource(source.getLocator());
 		metadata.updateMetaData(retriever);
 		retriever.release();
+		// prepare the native player now if a voice is free, so that start() does not wait for it
+		if (VoiceManager.tryAcquire(this)) {
+			player.preload();
+		}
 	}
 
 	public void doStart() {
-		player.start();
+		VoiceManager.acquire(this);
+		try {
+			player.start();
+		} finally {
+			VoiceManager.started(this);
+		}
 	}
 
 	public void doStop() {
@@ -70,14 +84,27 @@ public class MicroPlayer extends BasePlayer implements MediaPlayer.OnCompletionL
 	}
 
 	public void doClose() {
+		VoiceManager.release(this);
 		player.release();
 		source.disconnect();
 	}
 
 	public void doReset() {
+		VoiceManager.release(this);
 		player.reset();
 	}
 
+	/**
+	 * Releases the native player after {@link VoiceManager} gave the voice to another player.
+	 */
+	synchronized void steal() {
+		if (state == CLOSED || VoiceManager.holds(this)) {
+			return;
+		}
+		stop();
+		player.unload();
+	}
+
 	public void doSetMediaTime(long usec) {
 		int time = (int) usec / 1000;
 		player.seekTo(time);
@@ -95,6 +122,7 @@ public class MicroPlayer extends BasePlayer implements MediaPlayer.OnCompletionL
 
 	@Override
 	public void doSetLooping(boolean looping) {
+		priority = looping ? VoiceManager.PRIORITY_LOOPING : VoiceManager.PRIORITY_NORMAL;
 		player.setLooping(looping);
 	}
 
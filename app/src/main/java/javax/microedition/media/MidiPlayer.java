@@ -20,12 +20,22 @@ import org.billthefarmer.mididriver.MidiConstants;
 import org.billthefarmer.mididriver.MidiDriver;
 
 import javax.microedition.media.control.MIDIControl;
+import javax.microedition.media.synth.AudioEngine;
+import javax.microedition.media.synth.Renderer;
 
 public class MidiPlayer extends BasePlayer implements MIDIControl {
 
-	private final MidiDriver midiDriver = MidiInterface.getDriver();
+	private final MidiDriver midiDriver;
+	private final Renderer renderer;
 
 	public MidiPlayer() {
+		if (AudioEngine.isEnabled()) {
+			midiDriver = null;
+			renderer = new Renderer(AudioEngine.SAMPLE_RATE);
+		} else {
+			midiDriver = MidiInterface.getDriver();
+			renderer = null;
+		}
 		addControl(MIDIControl.class.getName(), this);
 	}
 
@@ -36,6 +46,9 @@ public class MidiPlayer extends BasePlayer implements MIDIControl {
 
 	@Override
 	public int getChannelVolume(int channel) {
+		if (renderer != null) {
+			return renderer.getChannelVolume(channel);
+		}
 		return -1;
 	}
 
@@ -46,6 +59,9 @@ public class MidiPlayer extends BasePlayer implements MIDIControl {
 
 	@Override
 	public int[] getProgram(int channel) {
+		if (renderer != null) {
+			return new int[]{0, renderer.getProgram(channel)};
+		}
 		return new int[0];
 	}
 
@@ -66,6 +82,31 @@ public class MidiPlayer extends BasePlayer implements MIDIControl {
 
 	@Override
 	public int longMidiEvent(byte[] data, int offset, int length) {
+		if (renderer != null) {
+			int end = offset + length;
+			int i = offset;
+			while (i < end) {
+				int status = data[i] & 0xFF;
+				if (status == 0xF0) {
+					// system exclusive messages are not supported
+					while (i < end && (data[i++] & 0xFF) != 0xF7) ;
+					continue;
+				}
+				if (status < 0x80 || status > 0xEF) {
+					i++;
+					continue;
+				}
+				int command = status & 0xF0;
+				int size = command == 0xC0 || command == 0xD0 ? 2 : 3;
+				if (i + size > end) {
+					break;
+				}
+				renderer.shortMessage(status, data[i + 1], size == 3 ? data[i + 2] : 0);
+				i += size;
+			}
+			AudioEngine.getInstance().play(renderer, null);
+			return length;
+		}
 		if (midiDriver.write(data)) {
 			return data.length;
 		} else {
@@ -75,17 +116,43 @@ public class MidiPlayer extends BasePlayer implements MIDIControl {
 
 	@Override
 	public void setChannelVolume(int channel, int volume) {
+		if (renderer != null) {
+			shortMidiEvent(CONTROL_CHANGE | channel, 7, volume);
+		}
 	}
 
 	@Override
 	public void setProgram(int channel, int bank, int program) {
+		if (renderer != null) {
+			shortMidiEvent(MidiConstants.PROGRAM_CHANGE | channel, program, 0);
+			return;
+		}
 		byte[] event = new byte[]{(byte) (MidiConstants.PROGRAM_CHANGE | channel), (byte) program};
 		midiDriver.write(event);
 	}
 
 	@Override
 	public void shortMidiEvent(int type, int data1, int data2) {
+		if (renderer != null) {
+			renderer.shortMessage(type, data1, data2);
+			AudioEngine.getInstance().play(renderer, null);
+			return;
+		}
 		byte[] event = new byte[]{(byte) type, (byte) data1, (byte) data2};
 		midiDriver.write(event);
 	}
+
+	@Override
+	public void doClose() {
+		if (renderer != null) {
+			AudioEngine.getInstance().stop(renderer);
+		}
+	}
+
+	@Override
+	public void doSetVolume(float left, float right) {
+		if (renderer != null) {
+			renderer.setVolume(left, right);
+		}
+	}
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers {@link PlayerListener} callbacks of one player asynchronously and in order.
+ * <p>
+ * Events are queued per player and drained by threads of a shared cached pool,
+ * so a listener blocking in its callback only delays the events of its own player.
+ * The delivery latency is counted when {@link MediaStats} is enabled and logged with it.
+ */
+class PlayerEventDispatcher implements Runnable {
+	private static final String TAG = PlayerEventDispatcher.class.getName();
+	private static final int POOL_SIZE = 64;
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+			30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+			r -> new Thread(r, "MIDletPlayerCallback"));
+	private static final ArrayDeque<Event> pool = new ArrayDeque<>();
+
+	private static final AtomicInteger queueDepth = new AtomicInteger();
+	private static final AtomicLong dispatchedCount = new AtomicLong();
+	private static final AtomicLong totalLatency = new AtomicLong();
+	private static final AtomicLong maxLatency = new AtomicLong();
+
+	private final Player player;
+	private final ArrayDeque<Event> queue = new ArrayDeque<>();
+	private boolean scheduled;
+
+	PlayerEventDispatcher(Player player) {
+		this.player = player;
+	}
+
+	void post(PlayerListener listener, String event, Object eventData) {
+		Event e = obtain(listener, event, eventData);
+		queueDepth.incrementAndGet();
+		synchronized (queue) {
+			queue.add(e);
+			if (scheduled) {
+				return;
+			}
+			scheduled = true;
+		}
+		executor.execute(this);
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Event e;
+			synchronized (queue) {
+				e = queue.poll();
+				if (e == null) {
+					scheduled = false;
+					return;
+				}
+			}
+			queueDepth.decrementAndGet();
+			if (MediaStats.isEnabled()) {
+				long latency = System.nanoTime() - e.postTime;
+				dispatchedCount.incrementAndGet();
+				totalLatency.addAndGet(latency);
+				long max;
+				while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency)) ;
+			}
+			try {
+				e.listener.playerUpdate(player, e.event, e.eventData);
+			} catch (Throwable t) {
+				Log.e(TAG, "Exception in playerUpdate: " + e.event, t);
+			} finally {
+				recycle(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of events posted but not yet delivered, for all players.
+	 */
+	static int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/**
+	 * Returns the average time between posting and delivering an event, in microseconds.
+	 */
+	static long getAverageLatency() {
+		long count = dispatchedCount.get();
+		return count == 0 ? 0 : totalLatency.get() / count / 1000;
+	}
+
+	/**
+	 * Returns the maximum time between posting and delivering an event, in microseconds.
+	 */
+	static long getMaxLatency() {
+		return maxLatency.get() / 1000;
+	}
+
+	static long getDispatchedCount() {
+		return dispatchedCount.get();
+	}
+
+	private static Event obtain(PlayerListener listener, String event, Object eventData) {
+		Event e;
+		synchronized (pool) {
+			e = pool.poll();
+		}
+		if (e == null) {
+			e = new Event();
+		}
+		e.listener = listener;
+		e.event = event;
+		e.eventData = eventData;
+		e.postTime = MediaStats.now();
+		return e;
+	}
+
+	private static void recycle(Event e) {
+		e.listener = null;
+		e.event = null;
+		e.eventData = null;
+		synchronized (pool) {
+			if (pool.size() < POOL_SIZE) {
+				pool.push(e);
+			}
+		}
+	}
+
+	private static final class Event {
+		PlayerListener listener;
+		String event;
+		Object eventData;
+		long postTime;
+	}
+}
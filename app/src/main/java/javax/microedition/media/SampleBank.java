@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.microedition.media.control.VolumeControl;
+
+/**
+ * Players for the sound objects of vendor APIs, shared by their data.
+ * <p>
+ * Games often create a new sound object for every effect, so released players are
+ * kept prepared and given to the next sound object created from the same data and type.
+ * The data of all players, in use or kept, is limited by a budget
+ * ({@code media.samplebank.budget} system property, in kilobytes); when it is exceeded
+ * the least recently used kept players are closed.
+ * <p>
+ * Sound objects of APIs without a release method acquire players for an owner object,
+ * such players are released when the owner is garbage collected.
+ */
+public class SampleBank {
+	private static final String TAG = SampleBank.class.getName();
+	private static final long BUDGET = Integer.getInteger("media.samplebank.budget", 4096) * 1024L;
+
+	private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static final IdentityHashMap<Player, Entry> players = new IdentityHashMap<>();
+	private static final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<>();
+	private static final HashSet<OwnerReference> owners = new HashSet<>();
+	private static long size;
+
+	private SampleBank() {
+	}
+
+	/**
+	 * Returns an unused player for the data, creating it if there is none.
+	 * The player must be given back with {@link #release(Player)} instead of being closed.
+	 */
+	public static Player acquire(byte[] data, String type) throws IOException {
+		releaseCollected();
+		String hash = MediaCache.getKey(data);
+		if (hash == null) {
+			return Manager.createPlayer(new ByteArrayInputStream(data), type);
+		}
+		String key = hash + ':' + type;
+		synchronized (SampleBank.class) {
+			Entry entry = entries.get(key);
+			if (entry != null && !entry.idle.isEmpty()) {
+				Player player = entry.idle.remove(entry.idle.size() - 1);
+				players.put(player, entry);
+				entry.active++;
+				return player;
+			}
+		}
+		Player player = Manager.createPlayer(new ByteArrayInputStream(data), type);
+		synchronized (SampleBank.class) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(key, data.length);
+				entries.put(key, entry);
+			}
+			players.put(player, entry);
+			entry.active++;
+			size += entry.size;
+		}
+		trim();
+		return player;
+	}
+
+	/**
+	 * Returns an unused player for the data, which is released when the owner is garbage collected.
+	 * The owner must keep the only reference to the player.
+	 */
+	public static Player acquire(byte[] data, String type, Object owner) throws IOException {
+		Player player = acquire(data, type);
+		synchronized (SampleBank.class) {
+			owners.add(new OwnerReference(owner, player, collectedOwners));
+		}
+		return player;
+	}
+
+	private static void releaseCollected() {
+		Reference<?> reference;
+		while ((reference = collectedOwners.poll()) != null) {
+			synchronized (SampleBank.class) {
+				owners.remove(reference);
+			}
+			release(((OwnerReference) reference).player);
+		}
+	}
+
+	/**
+	 * Stops the player and keeps it for the next {@link #acquire(byte[], String)} of the same data.
+	 * Players that were not acquired from the bank are closed.
+	 */
+	public static void release(Player player) {
+		if (player == null) {
+			return;
+		}
+		Entry entry;
+		synchronized (SampleBank.class) {
+			entry = players.remove(player);
+		}
+		if (entry == null || player.getState() == Player.CLOSED) {
+			player.close();
+			if (entry != null) {
+				remove(entry);
+			}
+			return;
+		}
+		try {
+			player.stop();
+			player.setLoopCount(1);
+			if (player.getState() != Player.UNREALIZED) {
+				player.setMediaTime(0);
+				VolumeControl volume = (VolumeControl) player.getControl("VolumeControl");
+				if (volume != null) {
+					volume.setMute(false);
+					volume.setLevel(100);
+				}
+			}
+		} catch (MediaException | RuntimeException e) {
+			Log.w(TAG, "Can't reset player, closing it", e);
+			player.close();
+			remove(entry);
+			return;
+		}
+		synchronized (SampleBank.class) {
+			entry.active--;
+			entry.idle.add(player);
+			// mark the entry as recently used
+			entries.get(entry.key);
+		}
+		trim();
+	}
+
+	private static synchronized void remove(Entry entry) {
+		entry.active--;
+		size -= entry.size;
+		if (entry.active == 0 && entry.idle.isEmpty()) {
+			entries.remove(entry.key);
+		}
+	}
+
+	/**
+	 * Closes the least recently used unused players while the budget is exceeded.
+	 */
+	private static void trim() {
+		ArrayList<Player> closed = new ArrayList<>();
+		synchronized (SampleBank.class) {
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (size > BUDGET && iterator.hasNext()) {
+				Entry entry = iterator.next();
+				while (size > BUDGET && !entry.idle.isEmpty()) {
+					closed.add(entry.idle.remove(entry.idle.size() - 1));
+					size -= entry.size;
+				}
+				if (entry.active == 0 && entry.idle.isEmpty()) {
+					iterator.remove();
+				}
+			}
+		}
+		for (int i = 0, count = closed.size(); i < count; i++) {
+			closed.get(i).close();
+		}
+	}
+
+	private static final class OwnerReference extends WeakReference<Object> {
+		final Player player;
+
+		OwnerReference(Object owner, Player player, ReferenceQueue<Object> queue) {
+			super(owner, queue);
+			this.player = player;
+		}
+	}
+
+	private static final class Entry {
+		final String key;
+		final int size;
+		final ArrayList<Player> idle = new ArrayList<>(1);
+		int active;
+
+		Entry(String key, int size) {
+			this.key = key;
+			this.size = size;
+		}
+	}
+}
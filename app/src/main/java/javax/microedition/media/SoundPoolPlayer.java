@@ -0,0 +1,379 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.SoundPool;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.microedition.media.control.MetaDataControl;
+import javax.microedition.media.protocol.DataSource;
+
+/**
+ * Player for short sound effects.
+ * <p>
+ * Samples are decoded once to PCM by a shared {@link SoundPool} with a bounded number
+ * of voices ({@code media.soundpool.voices} system property) and shared between players
+ * created from the same data. Starting such a player does not need a native MediaPlayer,
+ * so start latency and creation cost are much lower than with {@link MicroPlayer}.
+ * SoundPool cannot seek, so media time can only be set to the start of the clip.
+ * SoundPool does not report the end of a clip, so it is timed by the duration; a player whose
+ * duration is unknown or whose sample fails to load does not start.
+ */
+public class SoundPoolPlayer extends BasePlayer {
+	private static final String TAG = SoundPoolPlayer.class.getName();
+	private static final int MAX_VOICES = Integer.getInteger("media.soundpool.voices", 8);
+	private static final long LOAD_TIMEOUT = 1000;
+	// SoundPool keeps at most 1 MB of decoded PCM per sample
+	private static final long MAX_PCM_SIZE = 512 * 1024;
+	private static final long MAX_COMPRESSED_SIZE = 48 * 1024;
+
+	private static final HashMap<String, Sample> samples = new HashMap<>();
+	private static final SparseArray<Sample> loading = new SparseArray<>();
+	private static Handler handler;
+	private static SoundPool soundPool;
+
+	private final DataSource source;
+	private final InternalMetaData metadata;
+	private final Runnable completion = this::onCompletion;
+	private Sample sample;
+	private int streamId;
+	private boolean paused;
+	private boolean looping;
+	private float leftVolume = 1.0f, rightVolume = 1.0f;
+	private long duration;
+	private long startTime;
+	private long position;
+
+	public SoundPoolPlayer(DataSource datasource) {
+		source = datasource;
+		metadata = new InternalMetaData();
+
+		addControl(MetaDataControl.class.getName(), metadata);
+	}
+
+	/**
+	 * Checks whether a media file is small enough to be played by this player.
+	 */
+	static boolean isSupported(String type, File file) {
+		if (Boolean.getBoolean("media.soundpool.disable")) {
+			return false;
+		}
+		long length = file.length();
+		switch (type.toLowerCase()) {
+			case "audio/wav":
+			case "audio/x-wav":
+				return length <= MAX_PCM_SIZE;
+			case "audio/amr":
+			case "audio/mpeg":
+			case "audio/mp3":
+				return length <= MAX_COMPRESSED_SIZE;
+			default:
+				return false;
+		}
+	}
+
+	@Override
+	public void doRealize() throws IOException {
+		if (sample == null) {
+			source.connect();
+			sample = acquire(source.getLocator());
+		}
+	}
+
+	@Override
+	public void doPrefetch() throws IOException {
+		MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+		try {
+			retriever.setDataSource(source.getLocator());
+			metadata.updateMetaData(retriever);
+			String value = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+			if (value != null) {
+				duration = Long.parseLong(value);
+			}
+		} catch (RuntimeException e) {
+			Log.w(TAG, "Can't retrieve duration: " + source.getLocator(), e);
+		} finally {
+			retriever.release();
+		}
+		if (duration <= 0) {
+			duration = extractDuration(source.getLocator());
+		}
+	}
+
+	/**
+	 * Returns the duration of the first track with a known one in milliseconds, or 0.
+	 */
+	private static long extractDuration(String path) {
+		MediaExtractor extractor = new MediaExtractor();
+		try {
+			extractor.setDataSource(path);
+			for (int i = 0, count = extractor.getTrackCount(); i < count; i++) {
+				MediaFormat format = extractor.getTrackFormat(i);
+				if (format.containsKey(MediaFormat.KEY_DURATION)) {
+					return format.getLong(MediaFormat.KEY_DURATION) / 1000L;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			Log.w(TAG, "Can't extract duration: " + path, e);
+		} finally {
+			extractor.release();
+		}
+		return 0;
+	}
+
+	@Override
+	public void doStart() throws MediaException {
+		if (duration <= 0) {
+			// the end of the media could never be reported
+			throw new MediaException("Unknown duration: " + source.getLocator());
+		}
+		if (paused) {
+			soundPool.resume(streamId);
+			paused = false;
+		} else {
+			if (!sample.await()) {
+				throw new MediaException("Sample is not loaded: " + sample.path);
+			}
+			streamId = soundPool.play(sample.id, leftVolume, rightVolume, 1, looping ? -1 : 0, 1.0f);
+			position = 0;
+		}
+		startTime = SystemClock.uptimeMillis() - position;
+		scheduleCompletion();
+	}
+
+	@Override
+	public void doStop() {
+		cancelCompletion();
+		if (streamId != 0) {
+			soundPool.pause(streamId);
+			paused = true;
+			position = SystemClock.uptimeMillis() - startTime;
+		}
+	}
+
+	@Override
+	public void doReset() {
+		cancelCompletion();
+		if (streamId != 0) {
+			soundPool.stop(streamId);
+			streamId = 0;
+		}
+		paused = false;
+		position = 0;
+	}
+
+	@Override
+	public void doClose() {
+		doReset();
+		if (sample != null) {
+			release(sample);
+			sample = null;
+		}
+		source.disconnect();
+	}
+
+	@Override
+	public void doSetMediaTime(long usec) throws MediaException {
+		if (usec == 0 && streamId != 0) {
+			boolean playing = !paused;
+			doReset();
+			if (playing) {
+				doStart();
+			}
+		}
+	}
+
+	@Override
+	public long doGetMediaTime() {
+		long time = streamId == 0 || paused ? position : SystemClock.uptimeMillis() - startTime;
+		if (duration > 0) {
+			time = looping ? time % duration : Math.min(time, duration);
+		}
+		return time * 1000L;
+	}
+
+	@Override
+	public long doGetDuration() {
+		return duration * 1000L;
+	}
+
+	@Override
+	public void doSetLooping(boolean looping) {
+		this.looping = looping;
+		if (streamId != 0) {
+			soundPool.setLoop(streamId, looping ? -1 : 0);
+		}
+	}
+
+	@Override
+	public String doGetContentType() {
+		return source.getContentType();
+	}
+
+	@Override
+	public void doSetVolume(float left, float right) {
+		leftVolume = left;
+		rightVolume = right;
+		if (streamId != 0) {
+			soundPool.setVolume(streamId, left, right);
+		}
+	}
+
+	private void scheduleCompletion() {
+		if (!looping && duration > 0) {
+			handler.postDelayed(completion, Math.max(duration - position, 0));
+		}
+	}
+
+	private void cancelCompletion() {
+		Handler handler = SoundPoolPlayer.handler;
+		if (handler != null) {
+			handler.removeCallbacks(completion);
+		}
+	}
+
+	private synchronized void onCompletion() {
+		if (state != STARTED) {
+			return;
+		}
+		streamId = 0;
+		paused = false;
+		position = 0;
+		complete();
+	}
+
+	private static synchronized Sample acquire(String path) throws IOException {
+		if (soundPool == null) {
+			init();
+		}
+		Sample sample = samples.get(path);
+		if (sample == null) {
+			sample = new Sample(path);
+			samples.put(path, sample);
+			sample.id = soundPool.load(path, 1);
+			loading.put(sample.id, sample);
+		}
+		sample.refCount++;
+		return sample;
+	}
+
+	private static synchronized void release(Sample sample) {
+		if (--sample.refCount == 0) {
+			samples.remove(sample.path);
+			loading.remove(sample.id);
+			soundPool.unload(sample.id);
+		}
+	}
+
+	/**
+	 * Creates the pool on its own looper thread: load callbacks must not depend on
+	 * the MIDlet threads, which may be blocked waiting for a sample in {@link #doStart()}.
+	 */
+	private static void init() throws IOException {
+		HandlerThread thread = new HandlerThread("MIDletSoundPool");
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		FutureTask<SoundPool> task = new FutureTask<>(SoundPoolPlayer::createSoundPool);
+		handler.post(task);
+		try {
+			soundPool = task.get();
+		} catch (ExecutionException | InterruptedException e) {
+			thread.quit();
+			handler = null;
+			throw new IOException("Can't create SoundPool", e);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static SoundPool createSoundPool() {
+		SoundPool pool;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			AudioAttributes attributes = new AudioAttributes.Builder()
+					.setUsage(AudioAttributes.USAGE_GAME)
+					.setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+					.build();
+			pool = new SoundPool.Builder()
+					.setMaxStreams(MAX_VOICES)
+					.setAudioAttributes(attributes)
+					.build();
+		} else {
+			pool = new SoundPool(MAX_VOICES, AudioManager.STREAM_MUSIC, 0);
+		}
+		pool.setOnLoadCompleteListener((soundPool, sampleId, status) -> {
+			Sample sample;
+			synchronized (SoundPoolPlayer.class) {
+				sample = loading.get(sampleId);
+				loading.remove(sampleId);
+			}
+			if (sample != null) {
+				sample.onLoaded(status == 0);
+			}
+		});
+		return pool;
+	}
+
+	private static final class Sample {
+		final String path;
+		final long loadStart = SystemClock.uptimeMillis();
+		int id;
+		int refCount;
+		private boolean done;
+		private boolean loaded;
+
+		Sample(String path) {
+			this.path = path;
+		}
+
+		synchronized void onLoaded(boolean success) {
+			done = true;
+			loaded = success;
+			Log.d(TAG, "Sample " + (success ? "loaded" : "failed") + " in "
+					+ (SystemClock.uptimeMillis() - loadStart) + " ms: " + path);
+			notifyAll();
+		}
+
+		synchronized boolean await() {
+			long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT;
+			long remaining;
+			while (!done && (remaining = deadline - SystemClock.uptimeMillis()) > 0) {
+				try {
+					wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			return loaded;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import javax.microedition.media.synth.AudioEngine;
+import javax.microedition.media.synth.Renderer;
+import javax.microedition.media.tone.MidiToneConstants;
+
+/**
+ * {@link Manager#playTone(int, int, int)} without a Player.
+ * <p>
+ * Each tone is a note on event and a note off event scheduled after its duration
+ * on one shared renderer, so overlapping tones are mixed by its synthesizer.
+ */
+class ToneGenerator {
+	private static final int CHANNEL = MidiToneConstants.MIDI_TONE_CHANNEL;
+	private static final int NOTE_ON = 0x90 | CHANNEL;
+	private static final int NOTE_OFF = 0x80 | CHANNEL;
+
+	private static Renderer renderer;
+
+	static synchronized void play(int note, int duration, int volume) {
+		if (note > MidiToneConstants.TONE_MAX_NOTE || note < MidiToneConstants.TONE_MIN_NOTE) {
+			throw new IllegalArgumentException("Note is out of range, " +
+					"valid range is 0 <= Note <= 127");
+		}
+		if (duration <= 0) {
+			throw new IllegalArgumentException("Duration must be positive");
+		}
+		if (volume <= MidiToneConstants.TONE_MIN_VOLUME) {
+			return;
+		} else if (volume > MidiToneConstants.TONE_MAX_VOLUME) {
+			volume = MidiToneConstants.TONE_MAX_VOLUME;
+		}
+		if (renderer == null) {
+			renderer = new Renderer(AudioEngine.SAMPLE_RATE);
+			renderer.shortMessage(0xC0 | CHANNEL, MidiToneConstants.MIDI_TONE_INSTRUMENT, 0);
+			// the volume is set per note by velocity
+			renderer.shortMessage(0xB0 | CHANNEL, MidiToneConstants.MIDI_CONTROL_MAIN_VOLUME,
+					MidiToneConstants.MIDI_MAX_VOLUME);
+		}
+		int velocity = Math.max(1, volume * MidiToneConstants.MIDI_MAX_VELOCITY
+				/ MidiToneConstants.TONE_MAX_VOLUME);
+		renderer.shortMessage(NOTE_ON, note, velocity);
+		renderer.scheduleMessage(NOTE_OFF, note, 0, duration * 1000L);
+		AudioEngine.getInstance().play(renderer, null);
+	}
+}
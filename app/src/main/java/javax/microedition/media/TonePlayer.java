@@ -18,32 +18,65 @@ package javax.microedition.media;
 
 import org.billthefarmer.mididriver.MidiDriver;
 
+import java.io.IOException;
+
 import javax.microedition.media.control.ToneControl;
+import javax.microedition.media.synth.AudioEngine;
+import javax.microedition.media.synth.Renderer;
+import javax.microedition.media.synth.Sequence;
 import javax.microedition.media.tone.ToneSequence;
 
 public class TonePlayer extends BasePlayer implements ToneControl {
-
 	private static final byte[] EMPTY_MIDI_SEQUENCE = {
 			0x4D, 0x54, 0x68, 0x64, 0x00, 0x00, 0x00, 0x06, 0x00, 0x00, 0x00, 0x01, 0x00, 0x10,
 			0x4D, 0x54, 0x72, 0x6B, 0x00, 0x00, 0x00, 0x12, 0x00, (byte) 0xFF, 0x51, 0x03,
 			0x07, (byte) 0xA1, 0x20, 0x00, (byte) 0xC0, 0x01, 0x00, (byte) 0x80, 0x40,
 			0x7F, 0x00, (byte) 0xFF, 0x2F, 0x00
 	};
-	private final MidiDriver midiDriver = MidiInterface.getDriver();
+	private static Sequence emptySequence;
+	private final MidiDriver midiDriver;
+	private final Renderer renderer;
+	private final AudioEngine.Listener completion = r -> onCompletion();
 	private byte[] midiSequence = EMPTY_MIDI_SEQUENCE;
 	private long duration;
+	private boolean rewind;
 
 	public TonePlayer() {
+		if (AudioEngine.isEnabled()) {
+			midiDriver = null;
+			renderer = new Renderer(AudioEngine.SAMPLE_RATE);
+			renderer.setSequence(getEmptySequence());
+		} else {
+			midiDriver = MidiInterface.getDriver();
+			renderer = null;
+		}
 		addControl(ToneControl.class.getName(), this);
 	}
 
+	private static synchronized Sequence getEmptySequence() {
+		if (emptySequence == null) {
+			try {
+				emptySequence = Sequence.parse(EMPTY_MIDI_SEQUENCE);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return emptySequence;
+	}
+
 	@Override
 	public void setSequence(byte[] sequence) {
 		try {
-			ToneSequence tone = new ToneSequence(sequence);
-			tone.process();
-			midiSequence = tone.getByteArray();
-			duration = tone.getDuration();
+			if (renderer != null) {
+				renderer.setSequence(ToneSequenceCache.compile(sequence));
+				duration = renderer.getDuration();
+				rewind = false;
+			} else {
+				ToneSequence tone = new ToneSequence(sequence);
+				tone.process();
+				midiSequence = tone.getByteArray();
+				duration = tone.getDuration();
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -56,6 +89,87 @@ public class TonePlayer extends BasePlayer implements ToneControl {
 
 	@Override
 	public void doStart() {
-		midiDriver.write(midiSequence);
+		if (renderer == null) {
+			midiDriver.write(midiSequence);
+			return;
+		}
+		if (rewind || renderer.isEnded()) {
+			renderer.setPosition(0);
+			rewind = false;
+		}
+		AudioEngine.getInstance().play(renderer, completion);
+	}
+
+	@Override
+	public void doStop() {
+		if (renderer != null) {
+			AudioEngine.getInstance().stop(renderer);
+		}
+	}
+
+	@Override
+	public void doReset() {
+		if (renderer == null) {
+			return;
+		}
+		// after the end of media the last notes are left to release,
+		// the renderer is rewound on the next start
+		if (!renderer.isEnded()) {
+			AudioEngine.getInstance().stop(renderer);
+		}
+		rewind = true;
+	}
+
+	@Override
+	public void doClose() {
+		if (renderer != null) {
+			AudioEngine.getInstance().stop(renderer);
+		}
+	}
+
+	@Override
+	public void doSetMediaTime(long usec) {
+		if (renderer == null) {
+			return;
+		}
+		if (state != STARTED) {
+			AudioEngine.getInstance().stop(renderer);
+		}
+		renderer.setPosition(usec);
+		rewind = false;
+	}
+
+	@Override
+	public long doGetMediaTime() {
+		if (renderer == null || rewind) {
+			return 0;
+		}
+		AudioEngine engine = AudioEngine.getInstance();
+		long position = renderer.getPosition();
+		if (state == STARTED && !renderer.isEnded()) {
+			position = Math.max(0, position - engine.getLatency());
+		}
+		return position;
+	}
+
+	@Override
+	public void doSetLooping(boolean looping) {
+		if (renderer != null) {
+			renderer.setLooping(looping);
+		}
+	}
+
+	@Override
+	public void doSetVolume(float left, float right) {
+		if (renderer != null) {
+			renderer.setVolume(left, right);
+		}
+	}
+
+	private synchronized void onCompletion() {
+		if (state != STARTED) {
+			return;
+		}
+		complete();
 	}
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.microedition.media.synth.Sequence;
+import javax.microedition.media.tone.ToneSequence;
+
+/**
+ * Cache of tone sequences compiled to timed MIDI events.
+ * <p>
+ * Games usually set the same few sequences again and again, so each distinct sequence
+ * is converted and parsed once. Compiled sequences are immutable and shared
+ * between players.
+ */
+class ToneSequenceCache {
+	private static final int MAX_ENTRIES = 64;
+
+	private static final LinkedHashMap<Key, Sequence> cache =
+			new LinkedHashMap<Key, Sequence>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Sequence> eldest) {
+					return size() > MAX_ENTRIES;
+				}
+			};
+
+	static Sequence compile(byte[] sequence) throws IOException {
+		Key key = new Key(sequence);
+		synchronized (cache) {
+			Sequence compiled = cache.get(key);
+			if (compiled != null) {
+				return compiled;
+			}
+		}
+		long start = MediaStats.now();
+		ToneSequence tone = new ToneSequence(sequence);
+		tone.process();
+		Sequence compiled = Sequence.parse(tone.getMidiFile());
+		MediaStats.record(MediaStats.COMPILE_TONE, start, sequence.length);
+		synchronized (cache) {
+			// the key must own its data, the caller is free to modify the array later
+			cache.put(new Key(sequence.clone()), compiled);
+		}
+		return compiled;
+	}
+
+	private static final class Key {
+		final byte[] data;
+		final int hash;
+
+		Key(byte[] data) {
+			this.data = data;
+			hash = Arrays.hashCode(data);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return hash == key.hash && Arrays.equals(data, key.data);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
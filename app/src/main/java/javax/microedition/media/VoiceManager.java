@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.microedition.shell.ThreadPolicy;
+
+/**
+ * Limits the number of native MediaPlayer instances prepared by {@link MicroPlayer}s.
+ * <p>
+ * A player takes a voice when it starts and keeps it until it is reset or closed,
+ * so a paused player resumes without preparing again. When all voices
+ * ({@code media.voices} system property) are taken, one is stolen for the new player:
+ * paused voices go first, then voices of lower priority, then the least recently started.
+ * A stolen paused player prepares again on its next start, a stolen playing player is stopped.
+ * <p>
+ * Players are stolen on a separate thread: {@link #acquire(MicroPlayer)} is called with the
+ * lock of the starting player held, and taking the lock of the victim there could deadlock
+ * with a victim that is starting at the same time. A player that is starting is not stolen.
+ */
+public class VoiceManager {
+	static final int PRIORITY_NORMAL = 0;
+	/** Looping players are usually the background music */
+	static final int PRIORITY_LOOPING = 1;
+
+	private static final int MAX_VOICES = Math.max(Integer.getInteger("media.voices", 16), 1);
+
+	private static final ArrayList<MicroPlayer> voices = new ArrayList<>();
+	private static long startCounter;
+	private static int peakVoices;
+	private static long stolenCount;
+	private static long stoppedCount;
+	private static final ExecutorService stealer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(() -> {
+			ThreadPolicy.apply(ThreadPolicy.BACKGROUND);
+			r.run();
+		}, "MIDletVoiceSteal");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static void acquire(MicroPlayer player) {
+		MicroPlayer victim = null;
+		synchronized (VoiceManager.class) {
+			player.lastStart = ++startCounter;
+			player.starting = true;
+			if (voices.contains(player)) {
+				return;
+			}
+			if (voices.size() >= MAX_VOICES) {
+				victim = selectVictim(player);
+			}
+			if (victim != null) {
+				voices.remove(victim);
+				stolenCount++;
+				if (victim.getState() == Player.STARTED) {
+					stoppedCount++;
+				}
+			}
+			voices.add(player);
+			peakVoices = Math.max(peakVoices, voices.size());
+		}
+		if (victim != null) {
+			stealer.execute(victim::steal);
+		}
+	}
+
+	/**
+	 * Called when the player started by {@link #acquire(MicroPlayer)} is playing.
+	 */
+	static synchronized void started(MicroPlayer player) {
+		player.starting = false;
+	}
+
+	/**
+	 * Returns true if the player has a voice, checked by a stolen player
+	 * that may have taken a voice again before it was stopped.
+	 */
+	static synchronized boolean holds(MicroPlayer player) {
+		return voices.contains(player);
+	}
+
+	/**
+	 * Takes a voice for a prefetched player only if one is free. The player keeps
+	 * its last start time, so an idle prefetched voice is the first to be stolen.
+	 */
+	static synchronized boolean tryAcquire(MicroPlayer player) {
+		if (voices.contains(player)) {
+			return true;
+		}
+		if (voices.size() >= MAX_VOICES) {
+			return false;
+		}
+		voices.add(player);
+		peakVoices = Math.max(peakVoices, voices.size());
+		return true;
+	}
+
+	static synchronized void release(MicroPlayer player) {
+		player.starting = false;
+		voices.remove(player);
+	}
+
+	/**
+	 * Returns null if all other voices are starting, the limit is exceeded then.
+	 */
+	private static MicroPlayer selectVictim(MicroPlayer player) {
+		MicroPlayer victim = null;
+		for (int i = 0, size = voices.size(); i < size; i++) {
+			MicroPlayer voice = voices.get(i);
+			if (voice == player || voice.starting) {
+				continue;
+			}
+			if (victim == null || compare(voice, victim) < 0) {
+				victim = voice;
+			}
+		}
+		return victim;
+	}
+
+	/**
+	 * Orders voices from the first to be stolen.
+	 */
+	private static int compare(MicroPlayer a, MicroPlayer b) {
+		boolean aPlaying = a.getState() == Player.STARTED;
+		boolean bPlaying = b.getState() == Player.STARTED;
+		if (aPlaying != bPlaying) {
+			return aPlaying ? 1 : -1;
+		}
+		if (a.priority != b.priority) {
+			return a.priority < b.priority ? -1 : 1;
+		}
+		return Long.compare(a.lastStart, b.lastStart);
+	}
+
+	/**
+	 * Returns the number of players that can be prepared at the same time.
+	 */
+	public static int getMaxVoices() {
+		return MAX_VOICES;
+	}
+
+	public static synchronized int getActiveVoices() {
+		return voices.size();
+	}
+
+	public static synchronized int getPeakVoices() {
+		return peakVoices;
+	}
+
+	/**
+	 * Returns the number of voices taken from other players.
+	 */
+	public static synchronized long getStolenCount() {
+		return stolenCount;
+	}
+
+	/**
+	 * Returns the number of players stopped while playing because their voice was stolen.
+	 */
+	public static synchronized long getStoppedCount() {
+		return stoppedCount;
+	}
+}
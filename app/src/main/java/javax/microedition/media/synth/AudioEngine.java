@@ -0,0 +1,317 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.microedition.media.MediaStats;
+import javax.microedition.shell.ThreadPolicy;
+
+/**
+ * Mixes active {@link Renderer}s into one {@link AudioTrack} on a dedicated audio thread.
+ * <p>
+ * The thread blocks in {@link AudioTrack#write(short[], int, int)}, so rendering is paced
+ * by the audio hardware. The track is stopped while no renderer is active.
+ * End of sequence callbacks are delivered on a separate thread.
+ * <p>
+ * With the {@code media.synth.sink} system property set to {@code null} the mixed audio
+ * is discarded and rendering is paced by the system clock, so players work the same way
+ * without audio output. The engine also falls back to the null sink if the audio output
+ * can't be opened.
+ */
+public class AudioEngine implements Runnable {
+	private static final String TAG = AudioEngine.class.getName();
+	public static final int SAMPLE_RATE = 44100;
+	private static final int BLOCK_FRAMES = 512;
+	private static final boolean ENABLED = !Boolean.getBoolean("media.synth.disable");
+	private static final boolean NULL_SINK = "null".equals(System.getProperty("media.synth.sink"));
+
+	private static AudioEngine instance;
+
+	private final ArrayList<Renderer> renderers = new ArrayList<>();
+	private final ArrayList<Listener> listeners = new ArrayList<>();
+	private final ExecutorService callbacks = Executors.newSingleThreadExecutor(
+			r -> new Thread(() -> {
+				ThreadPolicy.apply(ThreadPolicy.AUDIO_CALLBACK);
+				r.run();
+			}, "MIDletSynthCallback"));
+	private AudioTrack track;
+	private boolean nullSink = NULL_SINK;
+	private long writtenFrames;
+	private long headBase;
+	/** Start of the output for the null sink, in nanoseconds */
+	private long nullSinkBase;
+
+	public interface Listener {
+		void onEndOfSequence(Renderer renderer);
+	}
+
+	/**
+	 * Returns false if tones and MIDI events should go to the shared MidiDriver instead
+	 * ({@code media.synth.disable} system property).
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	public static synchronized AudioEngine getInstance() {
+		if (instance == null) {
+			instance = new AudioEngine();
+			Thread thread = new Thread(instance, "MIDletSynth");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return instance;
+	}
+
+	private AudioEngine() {
+	}
+
+	/**
+	 * Starts mixing the renderer, does nothing if it is already active.
+	 */
+	public synchronized void play(Renderer renderer, Listener listener) {
+		int index = renderers.indexOf(renderer);
+		if (index >= 0) {
+			listeners.set(index, listener);
+			return;
+		}
+		renderers.add(renderer);
+		listeners.add(listener);
+		renderer.startTime = MediaStats.now();
+		notifyAll();
+	}
+
+	public synchronized void stop(Renderer renderer) {
+		int index = renderers.indexOf(renderer);
+		if (index >= 0) {
+			renderers.remove(index);
+			listeners.remove(index);
+		}
+	}
+
+	/**
+	 * Checked under the lock, so that a renderer restarted by {@link #play(Renderer, Listener)}
+	 * is never dropped.
+	 */
+	private synchronized void removeIfFinished(Renderer renderer) {
+		if (renderer.isFinished()) {
+			stop(renderer);
+		}
+	}
+
+	public synchronized boolean isPlaying(Renderer renderer) {
+		return renderers.contains(renderer);
+	}
+
+	/**
+	 * Returns the time between rendering a frame and hearing it, in microseconds.
+	 */
+	public synchronized long getLatency() {
+		if (nullSink) {
+			return 0;
+		}
+		if (track == null || writtenFrames == 0) {
+			return 0;
+		}
+		long played = (track.getPlaybackHeadPosition() & 0xFFFFFFFFL) - headBase;
+		long frames = Math.max(0, Math.min(writtenFrames - played, writtenFrames));
+		return frames * 1000000L / SAMPLE_RATE;
+	}
+
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+		float[] mix = new float[BLOCK_FRAMES * 2];
+		short[] out = new short[BLOCK_FRAMES * 2];
+		Renderer[] active = new Renderer[0];
+		Listener[] activeListeners = new Listener[0];
+		long[] startTimes = new long[0];
+		while (true) {
+			int count;
+			int started = 0;
+			synchronized (this) {
+				if (renderers.isEmpty()) {
+					if (track != null && track.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+						track.stop();
+					}
+					while (renderers.isEmpty()) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					if (nullSink) {
+						nullSinkBase = System.nanoTime();
+						writtenFrames = 0;
+					}
+				}
+				if (!nullSink) {
+					openTrack();
+				}
+				active = renderers.toArray(active);
+				activeListeners = listeners.toArray(activeListeners);
+				count = renderers.size();
+				if (startTimes.length < count) {
+					startTimes = new long[active.length];
+				}
+				for (int i = 0; i < count; i++) {
+					Renderer renderer = active[i];
+					if (renderer.startTime != 0) {
+						startTimes[started++] = renderer.startTime;
+						renderer.startTime = 0;
+					}
+				}
+			}
+
+			Arrays.fill(mix, 0.0f);
+			for (int i = 0; i < count; i++) {
+				Renderer renderer = active[i];
+				if (renderer.render(mix, BLOCK_FRAMES)) {
+					Listener listener = activeListeners[i];
+					if (listener != null) {
+						long posted = System.nanoTime();
+						callbacks.execute(() -> {
+							ThreadPolicy.recordLatency(ThreadPolicy.AUDIO_CALLBACK,
+									System.nanoTime() - posted);
+							listener.onEndOfSequence(renderer);
+						});
+					}
+				}
+				removeIfFinished(renderer);
+				active[i] = null;
+				activeListeners[i] = null;
+			}
+			for (int i = 0; i < out.length; i++) {
+				float sample = mix[i] * 32767.0f;
+				if (sample > 32767.0f) {
+					sample = 32767.0f;
+				} else if (sample < -32768.0f) {
+					sample = -32768.0f;
+				}
+				out[i] = (short) sample;
+			}
+			if (nullSink) {
+				writeNull();
+			} else {
+				int written = track.write(out, 0, out.length);
+				if (written < 0) {
+					Log.e(TAG, "AudioTrack write failed: " + written);
+					synchronized (this) {
+						track.release();
+						track = null;
+					}
+					continue;
+				}
+				synchronized (this) {
+					writtenFrames += written / 2;
+				}
+			}
+			if (started > 0) {
+				// the frames of this block are heard after the buffered ones
+				long latency = getLatency() * 1000L;
+				for (int i = 0; i < started; i++) {
+					MediaStats.record(MediaStats.FIRST_SAMPLE, startTimes[i] - latency);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates and starts the track if needed, switches to the null sink if that fails,
+	 * so the players still reach the end of media. Called under the lock.
+	 */
+	private void openTrack() {
+		try {
+			if (track == null) {
+				track = createTrack();
+			}
+			if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+				track.play();
+				headBase = track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+				writtenFrames = 0;
+			}
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Can't open audio output, playing without sound", e);
+			if (track != null) {
+				track.release();
+				track = null;
+			}
+			nullSink = true;
+			nullSinkBase = System.nanoTime();
+			writtenFrames = 0;
+		}
+	}
+
+	/**
+	 * Waits until the block would have been played by the audio hardware.
+	 */
+	private void writeNull() {
+		long deadline;
+		synchronized (this) {
+			writtenFrames += BLOCK_FRAMES;
+			deadline = nullSinkBase + writtenFrames * 1000000000L / SAMPLE_RATE;
+		}
+		long delay = deadline - System.nanoTime();
+		if (delay > 0) {
+			SystemClock.sleep(delay / 1000000L);
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static AudioTrack createTrack() {
+		int minSize = AudioTrack.getMinBufferSize(SAMPLE_RATE,
+				AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+		int size = Math.max(minSize, BLOCK_FRAMES * 4 * 2);
+		AudioTrack track;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			AudioAttributes attributes = new AudioAttributes.Builder()
+					.setUsage(AudioAttributes.USAGE_GAME)
+					.setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+					.build();
+			AudioFormat format = new AudioFormat.Builder()
+					.setSampleRate(SAMPLE_RATE)
+					.setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+					.setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+					.build();
+			track = new AudioTrack(attributes, format, size, AudioTrack.MODE_STREAM,
+					AudioManager.AUDIO_SESSION_ID_GENERATE);
+		} else {
+			track = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE,
+					AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT,
+					size, AudioTrack.MODE_STREAM);
+		}
+		if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+			track.release();
+			throw new IllegalStateException("AudioTrack is not initialized");
+		}
+		return track;
+	}
+}
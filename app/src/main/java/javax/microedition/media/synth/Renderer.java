@@ -0,0 +1,232 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+import java.util.Arrays;
+
+/**
+ * Plays a {@link Sequence} through its own {@link Synthesizer}.
+ * <p>
+ * The position is counted in rendered frames, so media time follows the audio exactly
+ * and seeking replays the controller and program changes before the new position.
+ * Messages sent with {@link #shortMessage(int, int, int)} are applied at the start
+ * of the next rendered block, messages sent with {@link #scheduleMessage(int, int, int, long)}
+ * are applied at the given delay after it. Rendering does not depend on the wall clock,
+ * so a renderer can be driven block by block without audio hardware.
+ */
+public class Renderer {
+	private final Synthesizer synth;
+	private final int sampleRate;
+	private Sequence sequence;
+	private int index;
+	private long frame;
+	private long durationFrames;
+	private boolean looping;
+	private boolean ended;
+	private float left = 1.0f;
+	private float right = 1.0f;
+	private int[] pending = new int[16];
+	private int pendingCount;
+	/** Frames rendered since creation, the time base of scheduled messages */
+	private long clock;
+	private long[] scheduledFrames = new long[8];
+	private int[] scheduled = new int[8];
+	private int scheduledCount;
+	/** Set by {@link AudioEngine} under its lock until the first block is played */
+	long startTime;
+
+	public Renderer(int sampleRate) {
+		this.sampleRate = sampleRate;
+		synth = new Synthesizer(sampleRate);
+	}
+
+	public synchronized void setSequence(Sequence sequence) {
+		this.sequence = sequence;
+		durationFrames = sequence == null ? 0 : toFrames(sequence.getDuration());
+		rewind();
+	}
+
+	public synchronized void setVolume(float left, float right) {
+		this.left = left;
+		this.right = right;
+	}
+
+	public synchronized void setLooping(boolean looping) {
+		this.looping = looping;
+	}
+
+	/**
+	 * Moves to the given position in microseconds. Sounding notes are cut,
+	 * controllers and programs are set as they would be at this position.
+	 */
+	public synchronized void setPosition(long usec) {
+		rewind();
+		if (sequence == null) {
+			return;
+		}
+		long target = Math.max(0, Math.min(toFrames(usec), durationFrames));
+		while (index < sequence.size && toFrames(sequence.times[index]) < target) {
+			int message = sequence.messages[index++];
+			int command = message & 0xF0;
+			if (command != 0x80 && command != 0x90) {
+				dispatch(message);
+			}
+		}
+		frame = target;
+	}
+
+	/**
+	 * Returns the position of the last rendered frame in microseconds.
+	 */
+	public synchronized long getPosition() {
+		return frame * 1000000L / sampleRate;
+	}
+
+	public synchronized long getDuration() {
+		return sequence == null ? 0 : sequence.getDuration();
+	}
+
+	/**
+	 * Queues a MIDI channel message to be played at the start of the next block.
+	 */
+	public synchronized void shortMessage(int status, int data1, int data2) {
+		if (pendingCount == pending.length) {
+			pending = Arrays.copyOf(pending, pendingCount * 2);
+		}
+		pending[pendingCount++] = status & 0xFF | (data1 & 0x7F) << 8 | (data2 & 0x7F) << 16;
+	}
+
+	/**
+	 * Queues a MIDI channel message to be played after the given delay in microseconds,
+	 * counted from the start of the next block.
+	 */
+	public synchronized void scheduleMessage(int status, int data1, int data2, long delay) {
+		if (scheduledCount == scheduled.length) {
+			scheduled = Arrays.copyOf(scheduled, scheduledCount * 2);
+			scheduledFrames = Arrays.copyOf(scheduledFrames, scheduledCount * 2);
+		}
+		long frame = clock + toFrames(delay);
+		int i = scheduledCount++;
+		// keep the queue sorted by time, messages with the same time stay in order
+		for (; i > 0 && scheduledFrames[i - 1] > frame; i--) {
+			scheduledFrames[i] = scheduledFrames[i - 1];
+			scheduled[i] = scheduled[i - 1];
+		}
+		scheduledFrames[i] = frame;
+		scheduled[i] = status & 0xFF | (data1 & 0x7F) << 8 | (data2 & 0x7F) << 16;
+	}
+
+	public synchronized int getProgram(int channel) {
+		return synth.getProgram(channel);
+	}
+
+	public synchronized int getChannelVolume(int channel) {
+		return synth.getChannelVolume(channel);
+	}
+
+	public synchronized int getActiveVoices() {
+		return synth.getActiveVoices();
+	}
+
+	/**
+	 * Returns true if the end of the sequence has been played, the voices may still be releasing.
+	 */
+	public synchronized boolean isEnded() {
+		return ended;
+	}
+
+	/**
+	 * Returns true if the end of the sequence has been played and the voices are silent.
+	 */
+	public synchronized boolean isFinished() {
+		return (sequence == null || ended) && pendingCount == 0 && scheduledCount == 0
+				&& synth.isSilent();
+	}
+
+	/**
+	 * Mixes the next block into an interleaved stereo buffer.
+	 *
+	 * @return true if the end of the sequence was reached in this block
+	 */
+	public synchronized boolean render(float[] buffer, int frames) {
+		for (int i = 0; i < pendingCount; i++) {
+			dispatch(pending[i]);
+		}
+		pendingCount = 0;
+
+		boolean reachedEnd = false;
+		int done = 0;
+		while (done < frames) {
+			int due = 0;
+			while (due < scheduledCount && scheduledFrames[due] <= clock) {
+				dispatch(scheduled[due++]);
+			}
+			if (due > 0) {
+				scheduledCount -= due;
+				System.arraycopy(scheduled, due, scheduled, 0, scheduledCount);
+				System.arraycopy(scheduledFrames, due, scheduledFrames, 0, scheduledCount);
+			}
+			long limit = scheduledCount > 0 ? scheduledFrames[0] - clock : Long.MAX_VALUE;
+			if (sequence == null || ended) {
+				int count = (int) Math.min(frames - done, limit);
+				synth.render(buffer, done, count, left, right);
+				done += count;
+				clock += count;
+				continue;
+			}
+			while (index < sequence.size && toFrames(sequence.times[index]) <= frame) {
+				dispatch(sequence.messages[index++]);
+			}
+			long next = index < sequence.size ? toFrames(sequence.times[index]) : durationFrames;
+			if (frame >= next) {
+				// end of the sequence
+				if (looping && durationFrames > 0) {
+					index = 0;
+					frame = 0;
+				} else {
+					synth.allNotesOff();
+					ended = true;
+					reachedEnd = true;
+				}
+				continue;
+			}
+			int count = (int) Math.min(frames - done, Math.min(next - frame, limit));
+			synth.render(buffer, done, count, left, right);
+			done += count;
+			frame += count;
+			clock += count;
+		}
+		return reachedEnd;
+	}
+
+	private void rewind() {
+		synth.reset();
+		index = 0;
+		frame = 0;
+		ended = false;
+		pendingCount = 0;
+		scheduledCount = 0;
+	}
+
+	private void dispatch(int message) {
+		synth.processMessage(message & 0xFF, message >> 8 & 0xFF, message >> 16 & 0xFF);
+	}
+
+	private long toFrames(long usec) {
+		return usec * sampleRate / 1000000L;
+	}
+}
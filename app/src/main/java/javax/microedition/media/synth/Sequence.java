@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * MIDI events of a standard MIDI file (format 0 or 1) merged into one list
+ * and timed in microseconds.
+ * <p>
+ * Each event is packed as {@code status | data1 << 8 | data2 << 16}.
+ * System exclusive and meta events other than the tempo are dropped.
+ */
+public final class Sequence {
+	private static final int DEFAULT_TEMPO = 500000;
+	private static final int META_TEMPO = 0x51;
+	private static final int META_END_OF_TRACK = 0x2F;
+	/** Internal status of the tempo events, removed after timing */
+	private static final int TEMPO = 0xFF;
+	private static final int INDEX_BITS = 20;
+
+	final long[] times;
+	final int[] messages;
+	final int size;
+	private final long duration;
+
+	private Sequence(long[] times, int[] messages, int size, long duration) {
+		this.times = times;
+		this.messages = messages;
+		this.size = size;
+		this.duration = duration;
+	}
+
+	/**
+	 * Returns the duration in microseconds.
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	public int getEventCount() {
+		return size;
+	}
+
+	public static Sequence parse(byte[] data) throws IOException {
+		Parser parser = new Parser(data);
+		if (parser.readInt() != 0x4D546864) { // MThd
+			throw new IOException("Not a MIDI file");
+		}
+		int headerLength = parser.readInt();
+		int start = parser.pos;
+		int format = parser.readShort();
+		int tracks = parser.readShort();
+		int division = (short) parser.readShort();
+		if (format > 1 || division == 0) {
+			throw new IOException("Unsupported MIDI file: format=" + format + ", division=" + division);
+		}
+		parser.pos = start + headerLength;
+
+		EventList events = new EventList();
+		long endTick = 0;
+		for (int i = 0; i < tracks && parser.pos + 8 <= data.length; i++) {
+			int type = parser.readInt();
+			int length = parser.readInt();
+			int end = Math.min(parser.pos + length, data.length);
+			if (type == 0x4D54726B) { // MTrk
+				endTick = Math.max(endTick, parser.readTrack(end, events));
+			}
+			parser.pos = end;
+		}
+		return events.build(division, endTick);
+	}
+
+	private static final class Parser {
+		final byte[] data;
+		int pos;
+
+		Parser(byte[] data) {
+			this.data = data;
+		}
+
+		int read() throws IOException {
+			if (pos >= data.length) {
+				throw new IOException("Unexpected end of MIDI file");
+			}
+			return data[pos++] & 0xFF;
+		}
+
+		int readShort() throws IOException {
+			return read() << 8 | read();
+		}
+
+		int readInt() throws IOException {
+			return readShort() << 16 | readShort();
+		}
+
+		int readVarLen() throws IOException {
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int b = read();
+				value = value << 7 | b & 0x7F;
+				if ((b & 0x80) == 0) {
+					break;
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * Reads the events of one track, returns the tick of its end.
+		 */
+		long readTrack(int end, EventList events) throws IOException {
+			long tick = 0;
+			int runningStatus = 0;
+			while (pos < end) {
+				tick += readVarLen();
+				int b = read();
+				int status;
+				if (b >= 0x80) {
+					status = b;
+					if (status < 0xF0) {
+						runningStatus = status;
+						b = read();
+					}
+				} else if (runningStatus == 0) {
+					throw new IOException("Missing MIDI status byte");
+				} else {
+					status = runningStatus;
+				}
+				// b is the first data byte of a channel message here
+				switch (status & 0xF0) {
+					case 0xC0:
+					case 0xD0:
+						events.add(tick, status | b << 8);
+						break;
+					case 0xF0:
+						if (status == 0xFF) {
+							int type = read();
+							int length = readVarLen();
+							if (type == META_TEMPO && length == 3) {
+								events.add(tick, TEMPO | (read() << 16 | read() << 8 | read()) << 8);
+								length = 0;
+							} else if (type == META_END_OF_TRACK) {
+								pos += length;
+								return tick;
+							}
+							pos += length;
+						} else {
+							// system exclusive, read the length before adding it to pos
+							int length = readVarLen();
+							pos += length;
+						}
+						break;
+					default:
+						events.add(tick, status | b << 8 | read() << 16);
+						break;
+				}
+			}
+			return tick;
+		}
+	}
+
+	private static final class EventList {
+		long[] ticks = new long[64];
+		int[] messages = new int[64];
+		int size;
+
+		void add(long tick, int message) {
+			if (size == ticks.length) {
+				ticks = Arrays.copyOf(ticks, size * 2);
+				messages = Arrays.copyOf(messages, size * 2);
+			}
+			ticks[size] = tick;
+			messages[size] = message;
+			size++;
+		}
+
+		Sequence build(int division, long endTick) throws IOException {
+			if (size >= 1 << INDEX_BITS) {
+				throw new IOException("Too many MIDI events: " + size);
+			}
+			// stable merge of the tracks by tick
+			long[] order = new long[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = ticks[i] << INDEX_BITS | i;
+			}
+			Arrays.sort(order);
+
+			long[] times = new long[size];
+			int[] result = new int[size];
+			int count = 0;
+			int tempo = DEFAULT_TEMPO;
+			// start of the current tempo segment, times are computed from it to avoid rounding drift
+			long tempoTick = 0;
+			long tempoTime = 0;
+			long lastTick = 0;
+			for (long key : order) {
+				int i = (int) (key & (1 << INDEX_BITS) - 1);
+				long time = tempoTime + ticksToTime(ticks[i] - tempoTick, tempo, division);
+				lastTick = ticks[i];
+				int message = messages[i];
+				if ((message & 0xFF) == TEMPO) {
+					tempo = message >>> 8;
+					tempoTick = lastTick;
+					tempoTime = time;
+				} else {
+					times[count] = time;
+					result[count++] = message;
+				}
+			}
+			long duration = tempoTime + ticksToTime(Math.max(endTick, lastTick) - tempoTick, tempo, division);
+			return new Sequence(times, result, count, duration);
+		}
+
+		private static long ticksToTime(long ticks, int tempo, int division) {
+			if (division < 0) {
+				// SMPTE: frames per second in the high byte, ticks per frame in the low byte
+				int ticksPerSecond = -(division >> 8) * (division & 0xFF);
+				return ticks * 1000000L / ticksPerSecond;
+			}
+			return ticks * tempo / division;
+		}
+	}
+}
@@ -0,0 +1,551 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+/**
+ * Software synthesizer for General MIDI channel messages.
+ * <p>
+ * Melodic voices play a single-cycle wavetable chosen by the instrument family
+ * of the channel program, shaped by a linear ADSR envelope. Percussion on channel 10
+ * is a pitched sine or a noise burst. The synthesizer has no clock or threads of its own
+ * and uses only {@link StrictMath} for its tables, so the same messages always render
+ * to the same samples.
+ */
+public class Synthesizer {
+	public static final int CHANNELS = 16;
+	private static final int DRUM_CHANNEL = 9;
+	private static final int MAX_VOICES = 32;
+	private static final float VOICE_GAIN = 0.25f;
+	private static final float NOISE_GAIN = 0.5f;
+	private static final int BEND_RANGE = 2;
+
+	private static final int TABLE_BITS = 10;
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+	private static final int FRACTION_BITS = 32 - TABLE_BITS;
+	private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+	private static final float FRACTION_SCALE = 1.0f / (1 << FRACTION_BITS);
+
+	private static final int WAVE_SINE = 0;
+	private static final int WAVE_TRIANGLE = 1;
+	private static final int WAVE_SQUARE = 2;
+	private static final int WAVE_SAW = 3;
+	private static final int WAVE_PULSE = 4;
+	private static final int WAVE_ORGAN = 5;
+	private static final float[][] WAVETABLES = {
+			createWave(1, 0, 0),
+			createWave(15, 2, 2),
+			createWave(15, 2, 1),
+			createWave(15, 1, 1),
+			createWave(15, 1, 4),
+			createWave(4, 1, 0),
+	};
+
+	/** Waveform, attack, decay (ms), sustain level (%) and release (ms) of the GM families */
+	private static final int[][] INSTRUMENTS = {
+			{WAVE_TRIANGLE, 2, 1200, 0, 200},   // piano
+			{WAVE_SINE, 1, 600, 0, 300},        // chromatic percussion
+			{WAVE_ORGAN, 5, 50, 90, 60},        // organ
+			{WAVE_SAW, 2, 900, 0, 150},         // guitar
+			{WAVE_TRIANGLE, 2, 500, 40, 80},    // bass
+			{WAVE_SAW, 80, 300, 80, 250},       // strings
+			{WAVE_SAW, 100, 300, 80, 300},      // ensemble
+			{WAVE_SQUARE, 30, 200, 75, 120},    // brass
+			{WAVE_PULSE, 20, 150, 80, 100},     // reed
+			{WAVE_SINE, 30, 100, 85, 120},      // pipe
+			{WAVE_SQUARE, 5, 100, 80, 80},      // synth lead
+			{WAVE_TRIANGLE, 200, 500, 70, 500}, // synth pad
+			{WAVE_SAW, 50, 800, 50, 400},       // synth effects
+			{WAVE_PULSE, 2, 700, 20, 150},      // ethnic
+			{WAVE_SINE, 1, 300, 0, 100},        // percussive
+			{WAVE_SAW, 10, 400, 30, 200},       // sound effects
+	};
+
+	private static final double[] NOTE_FREQUENCIES = new double[128];
+
+	static {
+		for (int i = 0; i < NOTE_FREQUENCIES.length; i++) {
+			NOTE_FREQUENCIES[i] = 440.0 * StrictMath.pow(2.0, (i - 69) / 12.0);
+		}
+	}
+
+	private static final int STAGE_OFF = 0;
+	private static final int STAGE_ATTACK = 1;
+	private static final int STAGE_DECAY = 2;
+	private static final int STAGE_SUSTAIN = 3;
+	private static final int STAGE_RELEASE = 4;
+
+	private final int sampleRate;
+	private final Channel[] channels = new Channel[CHANNELS];
+	private final Voice[] voices = new Voice[MAX_VOICES];
+	private long noteCounter;
+
+	public Synthesizer(int sampleRate) {
+		this.sampleRate = sampleRate;
+		for (int i = 0; i < CHANNELS; i++) {
+			channels[i] = new Channel();
+		}
+		for (int i = 0; i < MAX_VOICES; i++) {
+			voices[i] = new Voice();
+		}
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Processes a MIDI channel message.
+	 */
+	public void processMessage(int status, int data1, int data2) {
+		int ch = status & 0x0F;
+		Channel channel = channels[ch];
+		data1 &= 0x7F;
+		data2 &= 0x7F;
+		switch (status & 0xF0) {
+			case 0x80:
+				noteOff(ch, data1);
+				break;
+			case 0x90:
+				if (data2 == 0) {
+					noteOff(ch, data1);
+				} else {
+					noteOn(ch, data1, data2);
+				}
+				break;
+			case 0xB0:
+				controlChange(ch, data1, data2);
+				break;
+			case 0xC0:
+				channel.program = data1;
+				break;
+			case 0xE0:
+				channel.setBend(data1 | data2 << 7);
+				for (Voice voice : voices) {
+					if (voice.stage != STAGE_OFF && voice.channel == ch) {
+						voice.increment = getIncrement(voice.frequency * channel.bend);
+					}
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Stops all voices immediately and resets all controllers and programs.
+	 */
+	public void reset() {
+		for (Voice voice : voices) {
+			voice.stage = STAGE_OFF;
+		}
+		for (Channel channel : channels) {
+			channel.reset();
+			channel.program = 0;
+		}
+	}
+
+	/**
+	 * Releases all sounding notes.
+	 */
+	public void allNotesOff() {
+		for (Voice voice : voices) {
+			voice.held = false;
+			if (voice.stage != STAGE_OFF) {
+				voice.release();
+			}
+		}
+	}
+
+	public boolean isSilent() {
+		for (Voice voice : voices) {
+			if (voice.stage != STAGE_OFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getActiveVoices() {
+		int count = 0;
+		for (Voice voice : voices) {
+			if (voice.stage != STAGE_OFF) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int getProgram(int channel) {
+		return channels[channel].program;
+	}
+
+	public int getChannelVolume(int channel) {
+		return channels[channel].volume;
+	}
+
+	/**
+	 * Mixes the sound of the given number of frames into an interleaved stereo buffer.
+	 *
+	 * @param buffer buffer to add the samples to
+	 * @param frame  first frame in the buffer
+	 * @param frames number of frames
+	 * @param left   gain of the left channel
+	 * @param right  gain of the right channel
+	 */
+	public void render(float[] buffer, int frame, int frames, float left, float right) {
+		for (Voice voice : voices) {
+			if (voice.stage != STAGE_OFF) {
+				renderVoice(voice, buffer, frame * 2, frames, left, right);
+			}
+		}
+	}
+
+	private void renderVoice(Voice voice, float[] buffer, int offset, int frames, float left, float right) {
+		Channel channel = channels[voice.channel];
+		float gain = voice.velocity * channel.gain;
+		float l = gain * channel.panLeft * left;
+		float r = gain * channel.panRight * right;
+		float[] wave = voice.wave;
+		int phase = voice.phase;
+		int increment = voice.increment;
+		int noise = voice.noise;
+		float level = voice.level;
+		int end = offset + frames * 2;
+		for (int i = offset; i < end; i += 2) {
+			switch (voice.stage) {
+				case STAGE_ATTACK:
+					level += voice.attackStep;
+					if (level >= 1.0f) {
+						level = 1.0f;
+						voice.stage = STAGE_DECAY;
+					}
+					break;
+				case STAGE_DECAY:
+					level -= voice.decayStep;
+					if (level <= voice.sustain) {
+						level = voice.sustain;
+						voice.stage = level > 0.0f ? STAGE_SUSTAIN : STAGE_OFF;
+					}
+					break;
+				case STAGE_RELEASE:
+					level -= voice.releaseStep;
+					if (level <= 0.0f) {
+						level = 0.0f;
+						voice.stage = STAGE_OFF;
+					}
+					break;
+			}
+			if (voice.stage == STAGE_OFF) {
+				break;
+			}
+			float sample;
+			if (wave == null) {
+				noise = noise * 1103515245 + 12345;
+				sample = (noise >> 16) * (NOISE_GAIN / 32768.0f);
+			} else {
+				int index = phase >>> FRACTION_BITS;
+				float a = wave[index];
+				float b = wave[index + 1 & TABLE_SIZE - 1];
+				sample = a + (b - a) * ((phase & FRACTION_MASK) * FRACTION_SCALE);
+				phase += increment;
+			}
+			sample *= level;
+			buffer[i] += sample * l;
+			buffer[i + 1] += sample * r;
+		}
+		voice.phase = phase;
+		voice.noise = noise;
+		voice.level = level;
+	}
+
+	private void noteOn(int ch, int note, int velocity) {
+		Channel channel = channels[ch];
+		Voice voice = allocate(ch, note);
+		voice.channel = ch;
+		voice.note = note;
+		voice.velocity = velocity / 127.0f * VOICE_GAIN;
+		voice.held = false;
+		voice.phase = 0;
+		voice.noise = note;
+		voice.level = 0.0f;
+		voice.stage = STAGE_ATTACK;
+		voice.age = ++noteCounter;
+		if (ch == DRUM_CHANNEL) {
+			setupDrum(voice, note);
+		} else {
+			int[] instrument = INSTRUMENTS[channel.program >> 3];
+			voice.wave = WAVETABLES[instrument[0]];
+			voice.frequency = NOTE_FREQUENCIES[note];
+			setEnvelope(voice, instrument[1], instrument[2], instrument[3] / 100.0f, instrument[4]);
+		}
+		voice.increment = getIncrement(voice.frequency * channel.bend);
+	}
+
+	private void setupDrum(Voice voice, int note) {
+		switch (note) {
+			case 35: // bass drums
+			case 36:
+				voice.wave = WAVETABLES[WAVE_SINE];
+				voice.frequency = 60.0;
+				setEnvelope(voice, 1, 250, 0, 0);
+				break;
+			case 41: // toms
+			case 43:
+			case 45:
+			case 47:
+			case 48:
+			case 50:
+				voice.wave = WAVETABLES[WAVE_SINE];
+				voice.frequency = NOTE_FREQUENCIES[note + 12];
+				setEnvelope(voice, 1, 300, 0, 0);
+				break;
+			case 42: // closed hi-hats
+			case 44:
+				voice.wave = null;
+				setEnvelope(voice, 1, 50, 0, 0);
+				break;
+			case 46: // open hi-hat
+				voice.wave = null;
+				setEnvelope(voice, 1, 250, 0, 0);
+				break;
+			case 49: // cymbals
+			case 51:
+			case 52:
+			case 55:
+			case 57:
+			case 59:
+				voice.wave = null;
+				setEnvelope(voice, 1, 600, 0, 0);
+				break;
+			default:
+				voice.wave = null;
+				setEnvelope(voice, 1, 150, 0, 0);
+				break;
+		}
+	}
+
+	private void setEnvelope(Voice voice, int attack, int decay, float sustain, int release) {
+		voice.attackStep = 1.0f / Math.max(attack * sampleRate / 1000, 1);
+		voice.decayStep = (1.0f - sustain) / Math.max(decay * sampleRate / 1000, 1);
+		voice.sustain = sustain;
+		voice.releaseStep = 1.0f / Math.max(release * sampleRate / 1000, 1);
+	}
+
+	private void noteOff(int ch, int note) {
+		if (ch == DRUM_CHANNEL) {
+			// percussion always plays to the end of its decay
+			return;
+		}
+		Channel channel = channels[ch];
+		for (Voice voice : voices) {
+			if (voice.stage != STAGE_OFF && voice.stage != STAGE_RELEASE
+					&& voice.channel == ch && voice.note == note) {
+				if (channel.sustain) {
+					voice.held = true;
+				} else {
+					voice.release();
+				}
+			}
+		}
+	}
+
+	private void controlChange(int ch, int controller, int value) {
+		Channel channel = channels[ch];
+		switch (controller) {
+			case 7:
+				channel.volume = value;
+				channel.updateGain();
+				break;
+			case 10:
+				channel.setPan(value);
+				break;
+			case 11:
+				channel.expression = value;
+				channel.updateGain();
+				break;
+			case 64:
+				channel.sustain = value >= 64;
+				if (!channel.sustain) {
+					releaseHeld(ch);
+				}
+				break;
+			case 120: // all sound off
+				for (Voice voice : voices) {
+					if (voice.channel == ch) {
+						voice.stage = STAGE_OFF;
+					}
+				}
+				break;
+			case 121: // reset all controllers
+				channel.reset();
+				releaseHeld(ch);
+				break;
+			case 123: // all notes off
+				for (Voice voice : voices) {
+					if (voice.stage != STAGE_OFF && voice.channel == ch) {
+						voice.held = false;
+						voice.release();
+					}
+				}
+				break;
+		}
+	}
+
+	private void releaseHeld(int ch) {
+		for (Voice voice : voices) {
+			if (voice.held && voice.channel == ch) {
+				voice.held = false;
+				voice.release();
+			}
+		}
+	}
+
+	/**
+	 * Finds a voice for a new note: the voice already playing this note, a free voice,
+	 * the oldest released voice or the oldest voice, in that order.
+	 */
+	private Voice allocate(int ch, int note) {
+		Voice free = null;
+		Voice released = null;
+		Voice oldest = null;
+		for (Voice voice : voices) {
+			if (voice.stage == STAGE_OFF) {
+				if (free == null) {
+					free = voice;
+				}
+				continue;
+			}
+			if (voice.channel == ch && voice.note == note) {
+				return voice;
+			}
+			if (voice.stage == STAGE_RELEASE && (released == null || voice.age < released.age)) {
+				released = voice;
+			}
+			if (oldest == null || voice.age < oldest.age) {
+				oldest = voice;
+			}
+		}
+		if (free != null) {
+			return free;
+		}
+		return released != null ? released : oldest;
+	}
+
+	private int getIncrement(double frequency) {
+		return (int) (long) (frequency * 4294967296.0 / sampleRate);
+	}
+
+	/**
+	 * Creates a normalized single-cycle wave as a sum of harmonics.
+	 *
+	 * @param harmonics number of harmonics
+	 * @param step      step between harmonics, 2 for odd harmonics only
+	 * @param shape     amplitudes of the harmonics: 1/n for 1, alternating 1/n^2 for 2,
+	 *                  sin(n*pi/4)/n (25% pulse) for 4, equal for 0
+	 */
+	private static float[] createWave(int harmonics, int step, int shape) {
+		double[] samples = new double[TABLE_SIZE];
+		double peak = 0.0;
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			double x = 2.0 * StrictMath.PI * i / TABLE_SIZE;
+			double sum = 0.0;
+			for (int k = 0, n = 1; k < harmonics; k++, n += step) {
+				double amplitude;
+				switch (shape) {
+					case 1:
+						amplitude = 1.0 / n;
+						break;
+					case 2:
+						amplitude = (k % 2 == 0 ? 1.0 : -1.0) / ((double) n * n);
+						break;
+					case 4:
+						amplitude = StrictMath.sin(StrictMath.PI * n / 4.0) / n;
+						break;
+					default:
+						amplitude = 1.0;
+						break;
+				}
+				sum += amplitude * StrictMath.sin(n * x);
+			}
+			samples[i] = sum;
+			peak = Math.max(peak, Math.abs(sum));
+		}
+		float[] wave = new float[TABLE_SIZE];
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			wave[i] = (float) (samples[i] / peak);
+		}
+		return wave;
+	}
+
+	private static final class Channel {
+		int program;
+		int volume;
+		int expression;
+		float gain;
+		float panLeft;
+		float panRight;
+		double bend;
+		boolean sustain;
+
+		Channel() {
+			reset();
+		}
+
+		void reset() {
+			volume = 100;
+			expression = 127;
+			updateGain();
+			setPan(64);
+			setBend(8192);
+			sustain = false;
+		}
+
+		void updateGain() {
+			gain = volume * expression / (127.0f * 127.0f);
+		}
+
+		void setPan(int pan) {
+			panLeft = pan <= 64 ? 1.0f : (127 - pan) / 63.0f;
+			panRight = pan >= 64 ? 1.0f : pan / 64.0f;
+		}
+
+		void setBend(int value) {
+			bend = StrictMath.pow(2.0, (value - 8192) / 8192.0 * BEND_RANGE / 12.0);
+		}
+	}
+
+	private static final class Voice {
+		int channel;
+		int note;
+		long age;
+		float velocity;
+		boolean held;
+		float[] wave;
+		double frequency;
+		int phase;
+		int increment;
+		int noise;
+		int stage;
+		float level;
+		float attackStep;
+		float decayStep;
+		float sustain;
+		float releaseStep;
+
+		void release() {
+			stage = STAGE_RELEASE;
+		}
+	}
+}
@@ -87,6 +87,9 @@ public class MidiSequence {
 	/* MIDI sequence written using writeEvent( ) */
 	private ByteArrayOutputStream midiTrackEvents;
 
+	/* Same events with their delta times, used to build the MIDI file */
+	private ByteArrayOutputStream midiTrack;
+
 	/* Tone sequence duration */
 	private int duration;
 
@@ -102,6 +105,7 @@ public class MidiSequence {
 		tempo = TONE_DEFAULT_TEMPO * TONE_MULTIPLIER;
 		resolution = TONE_DEFAULT_RESOLUTION / TONE_MULTIPLIER;
 		midiTrackEvents = new ByteArrayOutputStream(MIDI_EVENTS_TRACK_GRANULARITY);
+		midiTrack = new ByteArrayOutputStream(MIDI_EVENTS_TRACK_GRANULARITY);
 	}
 
 	/**
@@ -132,6 +136,36 @@ public class MidiSequence {
 		return midi;
 	}
 
+	/**
+	 * Get midi sequence as a standard MIDI file (format 0) with timed events
+	 *
+	 * @return midi file bytes
+	 */
+	public byte[] getMidiFile() {
+		byte[] events = midiTrack.toByteArray();
+		// tempo event, program change, events, end of track
+		int trackLength = 7 + 3 + events.length + 4;
+		ByteArrayOutputStream file = new ByteArrayOutputStream(22 + trackLength);
+
+		// Tone resolution is in pulses per full note, so the tempo is
+		// written as microseconds per full note as well
+		int usPerNote = 60 * 1000000 / tempo;
+		byte[] header = {
+				'M', 'T', 'h', 'd', 0, 0, 0, 6, 0, 0, 0, 1, 0, (byte) resolution,
+				'M', 'T', 'r', 'k',
+				(byte) (trackLength >> 24), (byte) (trackLength >> 16),
+				(byte) (trackLength >> 8), (byte) trackLength,
+				0, (byte) 0xFF, 0x51, 0x03,
+				(byte) (usPerNote >> 16), (byte) (usPerNote >> 8), (byte) usPerNote,
+				0, (byte) (MidiToneConstants.MIDI_PROGRAM_CHANGE | channel), instrument
+		};
+		file.write(header, 0, header.length);
+		file.write(events, 0, events.length);
+		byte[] end = {0, (byte) 0xFF, 0x2F, 0};
+		file.write(end, 0, end.length);
+		return file.toByteArray();
+	}
+
 	/**
 	 * Set tempo
 	 *
@@ -189,6 +223,11 @@ public class MidiSequence {
 		midiTrackEvents.write(command);
 		midiTrackEvents.write(event);
 		midiTrackEvents.write(data);
+
+		midiTrack.write(command);
+		// silence events have a negative note value
+		midiTrack.write(event < 0 ? MIDI_SILENCE_NOTE : event);
+		midiTrack.write(data);
 		midiEventsByteCount += MIDI_EVENT_COMMAND_LENGTH;
 	}
 
@@ -242,6 +281,7 @@ public class MidiSequence {
 		// write the buffer out as 1-4 bytes.
 		while (true) {
 			byteCount++;
+			midiTrack.write(buffer & 0xFF);
 
 			// check if the indicator bit (8th) is set.
 			// If it is, continue writing.
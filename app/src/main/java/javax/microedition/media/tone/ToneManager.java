@@ -36,12 +36,10 @@ public class ToneManager {
 	private static final String CANNOT_PLAY_TONE = "Cannot play tone";
 
 	public static void play(int note, int duration, int volume) throws MediaException {
+		// only used with the MidiDriver, which plays the whole tone on start,
+		// Manager.playTone uses ToneGenerator with the synthesizer
 		Player p = createPlayer(note, duration, volume);
-		try {
-			p.start();
-		} catch (MediaException me) {
-			throw me;
-		}
+		p.start();
 		p.deallocate();
 	}
 
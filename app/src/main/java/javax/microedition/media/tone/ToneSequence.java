@@ -157,6 +157,13 @@ public class ToneSequence {
 		return midiSequence.getByteArray();
 	}
 
+	/**
+	 * Get tone sequence converted to a standard MIDI file
+	 */
+	public byte[] getMidiFile() {
+		return midiSequence.getMidiFile();
+	}
+
 	/**
 	 * Get duration of tone sequence
 	 */
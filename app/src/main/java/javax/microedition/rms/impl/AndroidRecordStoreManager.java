@@ -36,6 +36,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.microedition.rms.InvalidRecordIDException;
 import javax.microedition.rms.RecordStore;
@@ -55,6 +56,11 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 
 	private final static Object NULL_STORE = new Object();
 
+	private static final AtomicLong reads = new AtomicLong();
+	private static final AtomicLong writes = new AtomicLong();
+	private static final AtomicLong bytesRead = new AtomicLong();
+	private static final AtomicLong bytesWritten = new AtomicLong();
+	private static final AtomicLong ioTime = new AtomicLong();
 
 	private Map<String, Object> recordStores = null;
 
@@ -63,6 +69,56 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 		return "Android record store";
 	}
 
+	/**
+	 * Returns the number of header and record files read.
+	 */
+	public static long getReadCount() {
+		return reads.get();
+	}
+
+	/**
+	 * Returns the number of header and record files written or deleted.
+	 */
+	public static long getWriteCount() {
+		return writes.get();
+	}
+
+	public static long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public static long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	/**
+	 * Returns the time spent in file operations, in nanoseconds.
+	 */
+	public static long getIoTime() {
+		return ioTime.get();
+	}
+
+	public static void log() {
+		if (reads.get() == 0 && writes.get() == 0) {
+			return;
+		}
+		Log.i(TAG, "I/O: reads=" + reads + ", writes=" + writes
+				+ ", read=" + bytesRead + " B, written=" + bytesWritten
+				+ " B, time=" + ioTime.get() / 1000000L + " ms");
+	}
+
+	private static void countRead(File file, long start) {
+		reads.incrementAndGet();
+		bytesRead.addAndGet(file.length());
+		ioTime.addAndGet(System.nanoTime() - start);
+	}
+
+	private static void countWrite(int size, long start) {
+		writes.incrementAndGet();
+		bytesWritten.addAndGet(size);
+		ioTime.addAndGet(System.nanoTime() - start);
+	}
+
 	private synchronized void initializeIfNecessary() {
 		if (recordStores == null) {
 			recordStores = new ConcurrentHashMap<>();
@@ -123,10 +179,12 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 		RecordStoreImpl recordStoreImpl;
 		String headerName = getHeaderFileName(recordStoreName);
 		File headerFile = new File(AppClassLoader.getDataDir(), headerName);
+		long start = System.nanoTime();
 		try (DataInputStream dis = new DataInputStream(new FileInputStream(headerFile))) {
 			recordStoreImpl = new RecordStoreImpl(this);
 			recordStoreImpl.readHeader(dis);
 			recordStoreImpl.setOpen();
+			countRead(headerFile, start);
 		} catch (FileNotFoundException e) {
 			if (!createIfNecessary) {
 				throw new RecordStoreNotFoundException(recordStoreName);
@@ -150,8 +208,10 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 				for (String name : files) {
 					if (name.startsWith(prefix) && name.endsWith(RECORD_STORE_RECORD_SUFFIX)) {
 						File file = new File(dataDir, name);
+						start = System.nanoTime();
 						try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
 							recordStoreImpl.readRecord(dis);
+							countRead(file, start);
 						} catch (IOException e) {
 							Log.w(TAG, "loadFromDisk: broken record " + file, e);
 							int pLen = prefix.length();
@@ -199,8 +259,10 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 	public void loadRecord(RecordStoreImpl recordStoreImpl, int recordId)
 			throws RecordStoreException {
 		String recordName = getRecordFileName(recordStoreImpl.getName(), recordId);
+		long start = System.nanoTime();
 		try (DataInputStream dis = new DataInputStream(ContextHolder.openFileInput(recordName))) {
 			recordStoreImpl.readRecord(dis);
+			countRead(ContextHolder.getFileByName(recordName), start);
 		} catch (FileNotFoundException e) {
 			throw new InvalidRecordIDException();
 		} catch (IOException e) {
@@ -217,14 +279,18 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 	private synchronized void deleteFromDisk(RecordStoreImpl recordStore, int recordId)
 			throws RecordStoreException {
 		String headerName = getHeaderFileName(recordStore.getName());
+		long start = System.nanoTime();
 		try (DataOutputStream dos = new DataOutputStream(ContextHolder.openFileOutput(headerName))) {
 			recordStore.writeHeader(dos);
+			countWrite(dos.size(), start);
 		} catch (IOException e) {
 			Log.e(TAG, "RecordStore.saveToDisk: ERROR writing object to " + headerName, e);
 			throw new RecordStoreException(e.getMessage());
 		}
 
+		start = System.nanoTime();
 		ContextHolder.deleteFile(getRecordFileName(recordStore.getName(), recordId));
+		countWrite(0, start);
 	}
 
 	/**
@@ -233,8 +299,10 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 	private synchronized void saveToDisk(RecordStoreImpl recordStore, int recordId)
 			throws RecordStoreException {
 		String headerName = getHeaderFileName(recordStore.getName());
+		long start = System.nanoTime();
 		try (DataOutputStream dos = new DataOutputStream(ContextHolder.openFileOutput(headerName))) {
 			recordStore.writeHeader(dos);
+			countWrite(dos.size(), start);
 		} catch (IOException e) {
 			Log.e(TAG, "RecordStore.saveToDisk: ERROR writing object to " + headerName, e);
 			throw new RecordStoreException(e.getMessage());
@@ -242,8 +310,10 @@ public class AndroidRecordStoreManager implements RecordStoreManager {
 
 		if (recordId != -1) {
 			String recordName = getRecordFileName(recordStore.getName(), recordId);
+			start = System.nanoTime();
 			try (DataOutputStream dos = new DataOutputStream(ContextHolder.openFileOutput(recordName))) {
 				recordStore.writeRecord(dos, recordId);
+				countWrite(dos.size(), start);
 			} catch (IOException e) {
 				Log.e(TAG, "RecordStore.saveToDisk: ERROR writing object to " + recordName, e);
 				throw new RecordStoreException(e.getMessage());
@@ -28,6 +28,8 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import dalvik.system.DexClassLoader;
 import ru.playsoftware.j2meloader.BuildConfig;
@@ -41,6 +43,7 @@ public class AppClassLoader extends DexClassLoader {
 	private static AppClassLoader instance;
 	private static ZipFile zipFile;
 	private static String dataDir;
+	private static File appDir;
 	private static File oldResDir;
 
 	AppClassLoader(String paths, String tmpDir, ClassLoader parent, File appDir) {
@@ -55,9 +58,14 @@ public class AppClassLoader extends DexClassLoader {
 	}
 
 	public static void setDataDir(File appDir) {
+		AppClassLoader.appDir = appDir;
 		dataDir = appDir.getParentFile().getParent() + Config.MIDLET_DATA_DIR + appDir.getName();
 	}
 
+	public static File getAppDir() {
+		return appDir;
+	}
+
 	public static InputStream getResourceAsStream(Class<?> resClass, String resName) {
 		Log.d(TAG, "CUSTOM GET RES CALLED WITH PATH: " + resName);
 		if (resName == null || resName.equals("")) {
@@ -160,6 +168,46 @@ public class AppClassLoader extends DexClassLoader {
 		return null;
 	}
 
+	/**
+	 * Returns the names of all resource files of the MIDlet, empty if they can't be listed.
+	 */
+	public static List<String> getResourceNames() {
+		ArrayList<String> names = new ArrayList<>();
+		if (!BuildConfig.FULL_EMULATOR) {
+			return names;
+		}
+		if (zipFile == null) {
+			if (oldResDir != null) {
+				listFiles(oldResDir, "", names);
+			}
+			return names;
+		}
+		try {
+			for (FileHeader header : zipFile.getFileHeaders()) {
+				if (!header.isDirectory()) {
+					names.add(header.getFileName());
+				}
+			}
+		} catch (ZipException e) {
+			Log.e(TAG, "getResourceNames: ", e);
+		}
+		return names;
+	}
+
+	private static void listFiles(File dir, String prefix, List<String> names) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				listFiles(file, prefix + file.getName() + '/', names);
+			} else {
+				names.add(prefix + file.getName());
+			}
+		}
+	}
+
 	public static AppClassLoader getInstance() {
 		return instance;
 	}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import javax.microedition.util.ContextHolder;
+
+/**
+ * Replaces {@link Thread#sleep(long)} in MIDlet classes ({@code thread.sleep.pacer} system property).
+ * <p>
+ * Game loops usually sleep for a fixed time after each frame, so the frame lasts as long
+ * as the work plus the sleep and the overshoot of the system timer. A thread that sleeps
+ * for the same time again within a short while is treated as such a loop: the sleep is
+ * counted from the previous deadline instead of from the current time, so the time spent
+ * in the frame is compensated. Deadlines are kept on the requested period and, for periods
+ * of at least one vsync, the actual wake up is moved to the first vsync of the display
+ * at or after the deadline. The remainder of the sleep is finished by yielding to avoid
+ * the overshoot. Other sleeps, sleeps longer than {@code thread.sleep.pacer.max}
+ * milliseconds and sleeps on the UI thread are not changed.
+ */
+public final class FramePacer {
+	private static final boolean ENABLED = Boolean.getBoolean("thread.sleep.pacer");
+	private static final long MAX_PERIOD = Integer.getInteger("thread.sleep.pacer.max", 200);
+	/** A loop that has not slept for this long is started again, in nanoseconds */
+	private static final long MAX_GAP = 1000000000L;
+	/** Wake up this long before the deadline and yield for the rest, in nanoseconds */
+	private static final long SPIN = 500000L;
+
+	private static final ThreadLocal<FramePacer> pacers = new ThreadLocal<>();
+	private static volatile long vsyncTime;
+	private static volatile long vsyncPeriod;
+	private static volatile long lastUse;
+	private static boolean vsyncRunning;
+	private static Handler handler;
+
+	private long period;
+	/** Ideal end of the current frame */
+	private long deadline;
+	/** Time of the last return from {@link #sleep(long)} */
+	private long wakeTime;
+
+	private FramePacer() {
+	}
+
+	public static void sleep(long millis) throws InterruptedException {
+		if (!ENABLED || millis <= 0 || millis > MAX_PERIOD
+				|| Looper.myLooper() == Looper.getMainLooper()) {
+			Thread.sleep(millis);
+			return;
+		}
+		FramePacer pacer = pacers.get();
+		if (pacer == null) {
+			pacer = new FramePacer();
+			pacers.set(pacer);
+		}
+		pacer.pace(millis * 1000000L);
+	}
+
+	private void pace(long period) throws InterruptedException {
+		long now = System.nanoTime();
+		if (period != this.period || now - wakeTime > MAX_GAP) {
+			this.period = period;
+			deadline = now + period;
+		} else {
+			deadline += period;
+			if (deadline < now) {
+				// the frame took longer than the period, do not try to catch up
+				deadline = now;
+			}
+		}
+		long wake = alignToVsync(deadline, period);
+		try {
+			long delay = wake - now - SPIN;
+			if (delay > 0) {
+				Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+			} else if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			while (System.nanoTime() < wake) {
+				Thread.yield();
+			}
+		} finally {
+			wakeTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Returns the first vsync at or after the given time. Returns the time itself while
+	 * the vsync is unknown or if the frame period is shorter than the vsync period,
+	 * such frames would be stretched to a whole vsync or cut to nothing.
+	 */
+	private static long alignToVsync(long time, long framePeriod) {
+		lastUse = time;
+		startVsync();
+		long base = vsyncTime;
+		long period = vsyncPeriod;
+		if (base == 0 || period == 0 || framePeriod < period) {
+			return time;
+		}
+		long offset = (time - base) % period;
+		if (offset < 0) {
+			offset += period;
+		}
+		return offset == 0 ? time : time - offset + period;
+	}
+
+	private static synchronized void startVsync() {
+		if (vsyncRunning) {
+			return;
+		}
+		vsyncRunning = true;
+		if (handler == null) {
+			handler = new Handler(Looper.getMainLooper());
+			vsyncPeriod = getRefreshPeriod();
+		}
+		handler.post(() -> Choreographer.getInstance().postFrameCallback(new VsyncCallback()));
+	}
+
+	private static synchronized boolean stopVsyncIfIdle(long frameTime) {
+		if (frameTime - lastUse < MAX_GAP) {
+			return false;
+		}
+		vsyncRunning = false;
+		vsyncTime = 0;
+		return true;
+	}
+
+	private static long getRefreshPeriod() {
+		WindowManager wm = (WindowManager) ContextHolder.getAppContext()
+				.getSystemService(Context.WINDOW_SERVICE);
+		float rate = wm == null ? 0 : wm.getDefaultDisplay().getRefreshRate();
+		return rate < 1.0f ? 0 : (long) (1000000000L / rate);
+	}
+
+	/**
+	 * Keeps the time of the last vsync while the pacer is in use.
+	 */
+	private static final class VsyncCallback implements Choreographer.FrameCallback {
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			vsyncTime = frameTimeNanos;
+			if (!stopVsyncIfIdle(frameTimeNanos)) {
+				Choreographer.getInstance().postFrameCallback(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import javax.microedition.lcdui.Canvas;
+import javax.microedition.lcdui.Display;
+import javax.microedition.lcdui.Displayable;
+import javax.microedition.lcdui.event.CanvasEvent;
+import javax.microedition.rms.impl.AndroidRecordStoreManager;
+import javax.microedition.util.ContextHolder;
+
+/**
+ * Runs an installed MIDlet without {@link MicroActivity} and measures it, for performance
+ * regression tests driven by instrumentation.
+ * <p>
+ * The MIDlet is loaded by {@link MicroLoader} with its profile and started on {@link MidletThread}.
+ * Nothing is shown: the current {@link Canvas} renders into its offscreen image only, with the
+ * software renderer and without the virtual keyboard. Input is replayed from a script at fixed
+ * times counted from the start of the MIDlet, one event per line:
+ * <pre>
+ * # time in ms, event, arguments
+ * 0 press -5
+ * 100 release -5
+ * 500 down 120 200
+ * 520 drag 130 200
+ * 540 up 130 200
+ * 10000 end
+ * </pre>
+ * {@code press}, {@code repeat} and {@code release} take a MIDP key code, which is delivered
+ * as is, without the key mapping of the profile. {@code down}, {@code drag} and {@code up}
+ * take pointer coordinates on the canvas. Events that come while the current displayable
+ * is not a canvas are dropped. The run ends at the {@code end} event or the last event.
+ * Scripted events are never merged with the queued ones, so every drag and repeat reaches
+ * the MIDlet; {@code events_coalesced} in the report counts the events of the MIDlet itself
+ * (such as repaints) that the queue merged or dropped during the run.
+ * <p>
+ * The report contains the frame count and the frame times, the bytes allocated and the GC count
+ * of the runtime (Android 6.0+) and the record store I/O. It is written to {@code headless.txt}
+ * in the data directory of the MIDlet, the last frame to {@code headless.png}.
+ * The MIDlet is paused afterwards, the emulator state is static, so a process can do only one run.
+ * {@link #run()} blocks and must not be called on the main thread.
+ */
+public final class HeadlessRunner implements Canvas.FrameListener {
+	private static final String TAG = HeadlessRunner.class.getName();
+	private static final String REPORT_FILE = "headless.txt";
+	private static final String FRAME_FILE = "headless.png";
+	private static final int END = -1;
+	/** Interval of checking the current displayable between the events */
+	private static final long POLL_INTERVAL = 10;
+
+	private final Context context;
+	private final String appPath;
+	private final ArrayList<Step> steps = new ArrayList<>();
+	private long[] frameTimes = new long[1024];
+	private int frameCount;
+	private Displayable current;
+	private Canvas canvas;
+
+	public HeadlessRunner(Context context, String appPath) {
+		this.context = context;
+		this.appPath = appPath;
+	}
+
+	/**
+	 * Reads the input script, see the class description for the format.
+	 */
+	public void loadScript(Reader reader) throws IOException {
+		BufferedReader in = new BufferedReader(reader);
+		String line;
+		for (int n = 1; (line = in.readLine()) != null; n++) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] args = line.split("\\s+");
+			try {
+				steps.add(parseStep(args));
+			} catch (RuntimeException e) {
+				throw new IOException("Invalid script line " + n + ": " + line);
+			}
+		}
+	}
+
+	private static Step parseStep(String[] args) {
+		long time = Long.parseLong(args[0]);
+		switch (args[1]) {
+			case "press":
+				return new Step(time, CanvasEvent.KEY_PRESSED, Integer.parseInt(args[2]), 0);
+			case "repeat":
+				return new Step(time, CanvasEvent.KEY_REPEATED, Integer.parseInt(args[2]), 0);
+			case "release":
+				return new Step(time, CanvasEvent.KEY_RELEASED, Integer.parseInt(args[2]), 0);
+			case "down":
+				return new Step(time, CanvasEvent.POINTER_PRESSED,
+						Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			case "drag":
+				return new Step(time, CanvasEvent.POINTER_DRAGGED,
+						Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			case "up":
+				return new Step(time, CanvasEvent.POINTER_RELEASED,
+						Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+			case "end":
+				return new Step(time, END, 0, 0);
+			default:
+				throw new IllegalArgumentException(args[1]);
+		}
+	}
+
+	int getStepCount() {
+		return steps.size();
+	}
+
+	/**
+	 * Runs the MIDlet to the end of the script.
+	 *
+	 * @return the report
+	 */
+	public String run() throws IOException, InterruptedException {
+		MicroLoader loader = new MicroLoader(context, appPath);
+		if (!loader.init()) {
+			throw new IOException("MIDlet config not found: " + appPath);
+		}
+		MidletSystem.setProperty("com.nokia.mid.cmdline.instance", "1");
+		loader.applyConfiguration();
+		ContextHolder.setVk(null);
+		Canvas.setGraphicsMode(0, false);
+		Canvas.setShowFps(false);
+		Canvas.setScreenshotRawMode(true);
+		LinkedHashMap<String, String> midlets = loader.loadMIDletList();
+		if (midlets.isEmpty()) {
+			throw new IOException("No MIDlets found");
+		}
+		String mainClass = midlets.keySet().iterator().next();
+
+		long allocated = getRuntimeStat("art.gc.bytes-allocated");
+		long gcCount = getRuntimeStat("art.gc.gc-count");
+		long rmsReads = AndroidRecordStoreManager.getReadCount();
+		long rmsWrites = AndroidRecordStoreManager.getWriteCount();
+		long rmsBytesRead = AndroidRecordStoreManager.getBytesRead();
+		long rmsBytesWritten = AndroidRecordStoreManager.getBytesWritten();
+		long rmsTime = AndroidRecordStoreManager.getIoTime();
+		long coalesced = Display.getCoalescedEventCount();
+		Canvas.setFrameListener(this);
+		long start = SystemClock.uptimeMillis();
+		MidletThread.create(loader, mainClass);
+		MidletThread.startHeadless();
+
+		int posted = 0;
+		int dropped = 0;
+		for (Step step : steps) {
+			long due = start + step.time;
+			long now;
+			while ((now = SystemClock.uptimeMillis()) < due) {
+				updateCurrent();
+				Thread.sleep(Math.min(POLL_INTERVAL, due - now));
+			}
+			updateCurrent();
+			if (step.type == END) {
+				break;
+			}
+			if (canvas == null) {
+				dropped++;
+				continue;
+			}
+			CanvasEvent event;
+			if (step.type <= CanvasEvent.KEY_RELEASED) {
+				event = (CanvasEvent) CanvasEvent.getInstance(canvas, step.type, step.x);
+			} else {
+				event = (CanvasEvent) CanvasEvent.getInstance(canvas, step.type, 0, step.x, step.y);
+			}
+			event.setReplaceable(false);
+			Display.postEvent(event);
+			posted++;
+		}
+		long duration = SystemClock.uptimeMillis() - start;
+		coalesced = Display.getCoalescedEventCount() - coalesced;
+		Canvas.setFrameListener(null);
+
+		int frames;
+		long[] intervals;
+		synchronized (this) {
+			frames = frameCount;
+			intervals = new long[Math.max(frameCount - 1, 0)];
+			for (int i = 0; i < intervals.length; i++) {
+				intervals[i] = frameTimes[i + 1] - frameTimes[i];
+			}
+		}
+		Arrays.sort(intervals);
+		StringBuilder sb = new StringBuilder();
+		sb.append("midlet=").append(mainClass).append('\n');
+		sb.append("duration_ms=").append(duration).append('\n');
+		sb.append("events=").append(posted).append('\n');
+		sb.append("events_dropped=").append(dropped).append('\n');
+		sb.append("events_coalesced=").append(coalesced).append('\n');
+		sb.append("frames=").append(frames).append('\n');
+		sb.append("fps=").append(duration > 0 ? frames * 1000L / duration : 0).append('\n');
+		sb.append("frame_us_p50=").append(percentile(intervals, 50)).append('\n');
+		sb.append("frame_us_p90=").append(percentile(intervals, 90)).append('\n');
+		sb.append("frame_us_p99=").append(percentile(intervals, 99)).append('\n');
+		sb.append("frame_us_max=").append(percentile(intervals, 100)).append('\n');
+		if (allocated >= 0) {
+			sb.append("alloc_bytes=").append(getRuntimeStat("art.gc.bytes-allocated") - allocated).append('\n');
+			sb.append("gc_count=").append(getRuntimeStat("art.gc.gc-count") - gcCount).append('\n');
+		}
+		sb.append("rms_reads=").append(AndroidRecordStoreManager.getReadCount() - rmsReads).append('\n');
+		sb.append("rms_writes=").append(AndroidRecordStoreManager.getWriteCount() - rmsWrites).append('\n');
+		sb.append("rms_read_bytes=")
+				.append(AndroidRecordStoreManager.getBytesRead() - rmsBytesRead).append('\n');
+		sb.append("rms_written_bytes=")
+				.append(AndroidRecordStoreManager.getBytesWritten() - rmsBytesWritten).append('\n');
+		sb.append("rms_io_us=")
+				.append((AndroidRecordStoreManager.getIoTime() - rmsTime) / 1000L).append('\n');
+		String report = sb.toString();
+		Log.i(TAG, report);
+
+		String dataDir = AppClassLoader.getDataDir();
+		try (Writer writer = new FileWriter(new File(dataDir, REPORT_FILE))) {
+			writer.write(report);
+		}
+		if (canvas != null) {
+			Bitmap frame = canvas.getScreenShot().blockingGet();
+			try (OutputStream out = new FileOutputStream(new File(dataDir, FRAME_FILE))) {
+				frame.compress(Bitmap.CompressFormat.PNG, 100, out);
+			}
+		}
+		MidletThread.pauseApp();
+		return report;
+	}
+
+	/**
+	 * Shows the current canvas the same way as a surface of the screen would do it.
+	 */
+	private void updateCurrent() {
+		Display display = Display.getDisplay(null);
+		Displayable next = display == null ? null : display.getCurrent();
+		if (next == current) {
+			return;
+		}
+		current = next;
+		if (canvas != null) {
+			Display.postEvent(CanvasEvent.getInstance(canvas, CanvasEvent.HIDE_NOTIFY));
+		}
+		canvas = next instanceof Canvas ? (Canvas) next : null;
+		if (canvas != null) {
+			Display.postEvent(CanvasEvent.getInstance(canvas, CanvasEvent.SIZE_CHANGED,
+					canvas.getWidth(), canvas.getHeight()));
+			Display.postEvent(CanvasEvent.getInstance(canvas, CanvasEvent.SHOW_NOTIFY));
+			canvas.repaint();
+		}
+	}
+
+	@Override
+	public synchronized void onFrame(Canvas source) {
+		if (frameCount == frameTimes.length) {
+			frameTimes = Arrays.copyOf(frameTimes, frameCount * 2);
+		}
+		frameTimes[frameCount++] = System.nanoTime();
+	}
+
+	/**
+	 * Returns the value at the given percentile of sorted nanoseconds, in microseconds.
+	 */
+	private static long percentile(long[] sorted, int percent) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (sorted.length * percent + 99) / 100 - 1;
+		return sorted[Math.max(index, 0)] / 1000L;
+	}
+
+	private static long getRuntimeStat(String name) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(Debug.getRuntimeStat(name));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static final class Step {
+		final long time;
+		final int type;
+		final int x;
+		final int y;
+
+		Step(long time, int type, int x, int y) {
+			this.time = time;
+			this.type = type;
+			this.x = x;
+			this.y = y;
+		}
+	}
+}
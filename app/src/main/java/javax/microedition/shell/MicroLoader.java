@@ -57,6 +57,7 @@ import javax.microedition.lcdui.event.EventQueue;
 import javax.microedition.lcdui.keyboard.KeyMapper;
 import javax.microedition.lcdui.keyboard.VirtualKeyboard;
 import javax.microedition.m3g.Graphics3D;
+import javax.microedition.media.MediaPrefetcher;
 import javax.microedition.midlet.MIDlet;
 import javax.microedition.util.ContextHolder;
 
@@ -193,6 +194,8 @@ public class MicroLoader {
 			}
 			ClassLoader loader = new AppClassLoader(dexSource.getAbsolutePath(),
 					dexOptDir.getAbsolutePath(), context.getClassLoader(), appDir);
+			MediaPrefetcher.start();
+			SamplingProfiler.start();
 			Log.i(TAG, "loadMIDletList main: " + mainClass + " from dex:" + dexSource.getPath());
 			//noinspection unchecked
 			Class<MIDlet> clazz = (Class<MIDlet>) loader.loadClass(mainClass);
@@ -201,6 +204,7 @@ public class MicroLoader {
 			return init.newInstance();
 		} else {
 			AppClassLoader.setDataDir(appDir);
+			SamplingProfiler.start();
 			//noinspection unchecked
 			Class<MIDlet> clazz = (Class<MIDlet>) Class.forName(mainClass);
 			Constructor<MIDlet> init = clazz.getDeclaredConstructor();
@@ -21,12 +21,17 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
 import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import javax.microedition.lcdui.Canvas;
 import javax.microedition.lcdui.Displayable;
+import javax.microedition.media.MediaStats;
 import javax.microedition.midlet.MIDlet;
 import javax.microedition.midlet.MIDletStateChangeException;
+import javax.microedition.rms.impl.AndroidRecordStoreManager;
+import javax.microedition.shell.custom.ManagedThread;
+import javax.microedition.shell.custom.TimerScheduler;
 import javax.microedition.util.ContextHolder;
 
 import androidx.annotation.NonNull;
@@ -67,11 +72,22 @@ public class MidletThread extends HandlerThread implements Handler.Callback {
 		instance = new MidletThread(microLoader, mainClass);
 	}
 
+	@Override
+	protected void onLooperPrepared() {
+		ThreadPolicy.apply(ThreadPolicy.MAIN);
+	}
+
 	public static void notifyDestroyed() {
 		Thread.setDefaultUncaughtExceptionHandler(uncaughtExceptionHandler);
 		if (instance != null) {
 			instance.state = DESTROYED;
 		}
+		MediaStats.log();
+		TimerScheduler.log();
+		ManagedThread.log();
+		SamplingProfiler.stop();
+		ThreadPolicy.log();
+		AndroidRecordStoreManager.log();
 		MicroActivity activity = ContextHolder.getActivity();
 		if (activity != null) {
 			activity.finish();
@@ -97,6 +113,14 @@ public class MidletThread extends HandlerThread implements Handler.Callback {
 			instance.handler.obtainMessage(START).sendToTarget();
 	}
 
+	/**
+	 * Starts the MIDlet without an activity, used by {@link HeadlessRunner}.
+	 */
+	static void startHeadless() {
+		if (instance != null)
+			instance.handler.obtainMessage(START).sendToTarget();
+	}
+
 	static void destroyApp() {
 		Thread.setDefaultUncaughtExceptionHandler(uncaughtExceptionHandler);
 		new Thread(() -> {
@@ -123,6 +147,8 @@ public class MidletThread extends HandlerThread implements Handler.Callback {
 
 	@Override
 	public boolean handleMessage(@NonNull Message msg) {
+		ThreadPolicy.recordLatency(ThreadPolicy.MAIN,
+				(SystemClock.uptimeMillis() - msg.getWhen()) * 1000000L);
 		switch (msg.what) {
 			case INIT:
 				if (state != UNINITIALIZED) {
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.microedition.shell.custom.ManagedThread;
+import javax.microedition.shell.custom.Timer;
+
+/**
+ * Samples the stacks of the running MIDlet threads ({@code profiler.enable} system property).
+ * <p>
+ * Every {@code profiler.interval} milliseconds (20 by default) the stack of each runnable
+ * MIDlet thread is taken and counted. Blocked and sleeping threads are skipped, so the counts
+ * show where the CPU time of the MIDlet goes. The counts are written to
+ * {@code profile.folded} in the data directory of the MIDlet every 30 seconds and when it
+ * is destroyed, one line per stack with the frames from the root separated by semicolons,
+ * the format of flamegraph.pl and most flame graph viewers. Threads of the same kind are
+ * merged under the name of the thread without the trailing number. Stacks deeper than
+ * 64 frames keep the frames from the root, which are what the samples are grouped by,
+ * and end with a {@code [truncated]} frame.
+ * <p>
+ * The sampler measures its own CPU time and doubles the interval while it uses more than
+ * 2% of the elapsed time. ART does not count allocations of other threads, so the bytes
+ * allocated by the whole runtime and the GC count are logged instead.
+ */
+public final class SamplingProfiler implements Runnable {
+	private static final String TAG = SamplingProfiler.class.getName();
+	private static final String FILE_NAME = "profile.folded";
+	private static final long WRITE_INTERVAL = 30000;
+	private static final long OVERHEAD_WINDOW = 1000;
+	private static final int MAX_OVERHEAD_PERCENT = 2;
+	private static final int MAX_DEPTH = 64;
+	static final String TRUNCATED = "[truncated]";
+	private static final long MAX_INTERVAL = 1000;
+
+	private static SamplingProfiler instance;
+
+	private final HashMap<String, int[]> stacks = new HashMap<>();
+	private final StringBuilder builder = new StringBuilder(1024);
+	private final File file;
+	private long interval = Math.max(Integer.getInteger("profiler.interval", 20), 1);
+	private Thread[] threads = new Thread[32];
+	private long samples;
+
+	private SamplingProfiler(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Starts sampling if it is enabled, must be called after the data directory is set.
+	 */
+	public static synchronized void start() {
+		String dataDir = AppClassLoader.getDataDir();
+		if (!Boolean.getBoolean("profiler.enable") || dataDir == null || instance != null) {
+			return;
+		}
+		instance = new SamplingProfiler(new File(dataDir, FILE_NAME));
+		Thread thread = new Thread(instance, "MIDletProfiler");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Writes the samples collected so far, called when the MIDlet is destroyed.
+	 */
+	public static void stop() {
+		SamplingProfiler profiler;
+		synchronized (SamplingProfiler.class) {
+			profiler = instance;
+		}
+		if (profiler != null) {
+			profiler.write();
+		}
+	}
+
+	@Override
+	public void run() {
+		long windowStart = SystemClock.uptimeMillis();
+		long windowCpu = Debug.threadCpuTimeNanos();
+		long lastWrite = windowStart;
+		while (true) {
+			SystemClock.sleep(interval);
+			sample();
+			long now = SystemClock.uptimeMillis();
+			if (now - windowStart >= OVERHEAD_WINDOW) {
+				long cpu = Debug.threadCpuTimeNanos();
+				long used = (cpu - windowCpu) / 1000000L;
+				if (used * 100 > (now - windowStart) * MAX_OVERHEAD_PERCENT && interval < MAX_INTERVAL) {
+					interval = Math.min(interval * 2, MAX_INTERVAL);
+					Log.w(TAG, "Sampling takes " + used + " ms per " + (now - windowStart)
+							+ " ms, interval increased to " + interval + " ms");
+				}
+				windowStart = now;
+				windowCpu = cpu;
+			}
+			if (now - lastWrite >= WRITE_INTERVAL) {
+				write();
+				lastWrite = now;
+			}
+		}
+	}
+
+	private void sample() {
+		ThreadGroup group = Thread.currentThread().getThreadGroup();
+		while (group.getParent() != null) {
+			group = group.getParent();
+		}
+		int count;
+		while ((count = group.enumerate(threads)) == threads.length) {
+			threads = new Thread[threads.length * 2];
+		}
+		for (int i = 0; i < count; i++) {
+			Thread thread = threads[i];
+			threads[i] = null;
+			if (thread.getState() != Thread.State.RUNNABLE || !isMidletThread(thread)) {
+				continue;
+			}
+			StackTraceElement[] trace = thread.getStackTrace();
+			if (trace.length == 0) {
+				continue;
+			}
+			add(thread.getName(), trace);
+		}
+	}
+
+	private static boolean isMidletThread(Thread thread) {
+		if (thread instanceof ManagedThread || thread instanceof MidletThread) {
+			return true;
+		}
+		String name = thread.getName();
+		return name.equals("MIDletEventQueue") || name.equals("MIDletTimer")
+				|| thread.getClass().getName().startsWith(Timer.class.getName());
+	}
+
+	private void add(String threadName, StackTraceElement[] trace) {
+		StringBuilder sb = builder;
+		sb.setLength(0);
+		fold(sb, threadName, trace);
+		String key = sb.toString();
+		synchronized (this) {
+			int[] counter = stacks.get(key);
+			if (counter == null) {
+				stacks.put(key, new int[]{1});
+			} else {
+				counter[0]++;
+			}
+			samples++;
+		}
+	}
+
+	/**
+	 * Appends the stack in the folded format: the kind of the thread, then the frames
+	 * from the root to at most {@link #MAX_DEPTH} frames deep.
+	 */
+	static void fold(StringBuilder sb, String threadName, StackTraceElement[] trace) {
+		// the separators of the folded format can not be escaped
+		appendFrame(sb, getKind(threadName));
+		int last = Math.max(trace.length - MAX_DEPTH, 0);
+		for (int i = trace.length - 1; i >= last; i--) {
+			sb.append(';');
+			appendFrame(sb, trace[i].getClassName() + '.' + trace[i].getMethodName());
+		}
+		if (last > 0) {
+			sb.append(';').append(TRUNCATED);
+		}
+	}
+
+	/**
+	 * Removes the number from names like {@code Thread-12}.
+	 */
+	static String getKind(String name) {
+		int end = name.length();
+		while (end > 0 && Character.isDigit(name.charAt(end - 1))) {
+			end--;
+		}
+		if (end > 1 && end < name.length() && name.charAt(end - 1) == '-') {
+			return name.substring(0, end - 1);
+		}
+		return name;
+	}
+
+	private static void appendFrame(StringBuilder sb, String frame) {
+		for (int i = 0; i < frame.length(); i++) {
+			char c = frame.charAt(i);
+			sb.append(c == ';' || c == ' ' ? '_' : c);
+		}
+	}
+
+	private synchronized void write() {
+		File tmp = new File(file.getPath() + ".tmp");
+		//noinspection ResultOfMethodCallIgnored
+		file.getParentFile().mkdirs();
+		try (Writer writer = new FileWriter(tmp)) {
+			for (Map.Entry<String, int[]> entry : stacks.entrySet()) {
+				writer.write(entry.getKey());
+				writer.write(' ');
+				writer.write(Integer.toString(entry.getValue()[0]));
+				writer.write('\n');
+			}
+		} catch (IOException e) {
+			Log.w(TAG, "Can't write profile: " + file, e);
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			Log.w(TAG, "Can't write profile: " + file);
+			return;
+		}
+		StringBuilder sb = new StringBuilder("Profile: samples=").append(samples)
+				.append(", stacks=").append(stacks.size())
+				.append(", interval=").append(interval).append(" ms");
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+			sb.append(", allocated=").append(Debug.getRuntimeStat("art.gc.bytes-allocated"))
+					.append(", gc=").append(Debug.getRuntimeStat("art.gc.gc-count"));
+		}
+		Log.i(TAG, sb.append(", file=").append(file).toString());
+	}
+}
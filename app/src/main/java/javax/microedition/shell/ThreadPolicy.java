@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import android.os.Build;
+import android.os.PerformanceHintManager;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.microedition.util.ContextHolder;
+
+import androidx.annotation.RequiresApi;
+
+/**
+ * Sets the scheduling priority of the emulator threads by their role.
+ * <p>
+ * The {@code thread.policy} system property selects a preset: {@code game} raises
+ * the MIDlet main, event and render threads and lowers timers, audio callbacks and
+ * background loading, any other value keeps the default priorities. The nice value of
+ * a single role can be set with {@code thread.priority.<role>}, e.g.
+ * {@code thread.priority.timer: 0}.
+ * <p>
+ * Android does not let applications pin threads to cores, with {@code thread.policy.hint}
+ * the main, event and render threads are put into a performance hint session instead
+ * (Android 12 and later), which makes the system run them on faster cores when the work
+ * reported by the event thread gets close to the frame time ({@code thread.policy.hint.target}
+ * in microseconds, 16667 by default).
+ * <p>
+ * The delay between posting work to a thread and the thread starting it is counted per role.
+ */
+public final class ThreadPolicy {
+	private static final String TAG = ThreadPolicy.class.getName();
+
+	public static final int MAIN = 0;
+	public static final int EVENT = 1;
+	public static final int RENDER = 2;
+	public static final int TIMER = 3;
+	public static final int AUDIO_CALLBACK = 4;
+	public static final int BACKGROUND = 5;
+
+	private static final String[] NAMES = {"main", "event", "render", "timer", "audio", "background"};
+	private static final int UNCHANGED = Integer.MIN_VALUE;
+	private static final int[] GAME_PRESET = {
+			Process.THREAD_PRIORITY_DISPLAY,
+			Process.THREAD_PRIORITY_DISPLAY,
+			Process.THREAD_PRIORITY_URGENT_DISPLAY,
+			Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE,
+			Process.THREAD_PRIORITY_BACKGROUND,
+			Process.THREAD_PRIORITY_BACKGROUND,
+	};
+	private static final int[] priorities = new int[NAMES.length];
+	private static final boolean HINT = Boolean.getBoolean("thread.policy.hint");
+	private static final long HINT_TARGET = Integer.getInteger("thread.policy.hint.target", 16667) * 1000L;
+
+	private static final int[] tids = new int[NAMES.length];
+	/** Updated without locks, since the event, render, timer and audio threads record on every wakeup */
+	private static final AtomicLongArray latencyCount = new AtomicLongArray(NAMES.length);
+	private static final AtomicLongArray latencyTotal = new AtomicLongArray(NAMES.length);
+	private static final AtomicLongArray latencyMax = new AtomicLongArray(NAMES.length);
+	private static Object hintSession;
+
+	static {
+		boolean game = "game".equals(System.getProperty("thread.policy"));
+		for (int role = 0; role < NAMES.length; role++) {
+			Integer value = Integer.getInteger("thread.priority." + NAMES[role]);
+			priorities[role] = value != null ? value : game ? GAME_PRESET[role] : UNCHANGED;
+		}
+	}
+
+	private ThreadPolicy() {
+	}
+
+	/**
+	 * Sets the priority of the current thread for the role, called by the thread itself when it starts.
+	 */
+	public static void apply(int role) {
+		int priority = priorities[role];
+		if (priority != UNCHANGED) {
+			try {
+				Process.setThreadPriority(priority);
+			} catch (RuntimeException e) {
+				Log.w(TAG, "Can't set priority " + priority + " for " + NAMES[role] + " thread", e);
+			}
+		}
+		if (HINT && role <= RENDER && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+			synchronized (ThreadPolicy.class) {
+				tids[role] = Process.myTid();
+				createHintSession();
+			}
+		}
+	}
+
+	/**
+	 * Records the delay between posting work to a thread and the start of the work.
+	 */
+	public static void recordLatency(int role, long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+		latencyCount.incrementAndGet(role);
+		latencyTotal.addAndGet(role, nanos);
+		long max;
+		while (nanos > (max = latencyMax.get(role)) && !latencyMax.compareAndSet(role, max, nanos)) ;
+	}
+
+	/**
+	 * Reports the time the event thread was busy before it got idle.
+	 */
+	public static void reportWork(long nanos) {
+		Object session;
+		synchronized (ThreadPolicy.class) {
+			session = hintSession;
+		}
+		if (session != null && nanos > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+			reportWork(session, nanos);
+		}
+	}
+
+	@RequiresApi(api = Build.VERSION_CODES.S)
+	private static void reportWork(Object session, long nanos) {
+		try {
+			((PerformanceHintManager.Session) session).reportActualWorkDuration(nanos);
+		} catch (RuntimeException e) {
+			Log.w(TAG, "Can't report work duration", e);
+		}
+	}
+
+	@RequiresApi(api = Build.VERSION_CODES.S)
+	private static void createHintSession() {
+		PerformanceHintManager manager = ContextHolder.getAppContext()
+				.getSystemService(PerformanceHintManager.class);
+		if (manager == null) {
+			return;
+		}
+		int count = 0;
+		int[] threads = new int[RENDER + 1];
+		for (int role = 0; role <= RENDER; role++) {
+			if (tids[role] != 0) {
+				threads[count++] = tids[role];
+			}
+		}
+		// the threads of a session can only be changed since Android 14
+		PerformanceHintManager.Session session =
+				manager.createHintSession(Arrays.copyOf(threads, count), HINT_TARGET);
+		if (session == null) {
+			Log.w(TAG, "Performance hint sessions are not supported");
+			return;
+		}
+		if (hintSession != null) {
+			((PerformanceHintManager.Session) hintSession).close();
+		}
+		hintSession = session;
+	}
+
+	public static void log() {
+		for (int role = 0; role < NAMES.length; role++) {
+			long count = latencyCount.get(role);
+			if (count == 0) {
+				continue;
+			}
+			Log.i(TAG, "Thread " + NAMES[role] + ": priority="
+					+ (priorities[role] == UNCHANGED ? "default" : priorities[role])
+					+ ", wakeups=" + count
+					+ ", average latency=" + latencyTotal.get(role) / count / 1000 + " us"
+					+ ", max latency=" + latencyMax.get(role) / 1000 + " us");
+		}
+	}
+}
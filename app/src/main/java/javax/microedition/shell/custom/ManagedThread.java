@@ -0,0 +1,304 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell.custom;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.Process;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Replaces {@link Thread} in MIDlet classes: threads created with {@code new Thread(...)}
+ * and subclasses of {@link Thread} are instances of this class.
+ * <p>
+ * With the {@code thread.managed} system property set, the threads are created with
+ * a small stack ({@code thread.stack} in KB, 256 by default) instead of the system default
+ * and threads without a name are named after the class of their code.
+ * {@code thread.managed.max} limits the number of running MIDlet threads: threads started
+ * over the limit wait in a queue and start when another one ends. A queued thread is
+ * not alive yet, so the limit must be higher than the number of threads that wait
+ * for each other, it is off by default.
+ * <p>
+ * CPU time of each thread is available in both modes.
+ * <p>
+ * The body of the thread is wrapped by {@link #run()}: {@code run()} of direct subclasses
+ * is renamed to {@link #run$()} and their {@code super.run()} calls {@link #runTarget()}
+ * when the MIDlet is converted.
+ */
+public class ManagedThread extends Thread {
+	private static final String TAG = ManagedThread.class.getName();
+	private static final boolean MANAGED = Boolean.getBoolean("thread.managed");
+	private static final long STACK_SIZE = MANAGED ? Integer.getInteger("thread.stack", 256) * 1024L : 0;
+	/** Reads the thread CPU time, replaced in tests */
+	static CpuClock cpuClock = new CpuClock() {
+		@Override
+		public int myTid() {
+			return Process.myTid();
+		}
+
+		@Override
+		public long threadCpuTimeNanos() {
+			return Debug.threadCpuTimeNanos();
+		}
+	};
+	/** {@code thread.managed.max}, set by tests */
+	static int maxRunning = MANAGED ? Integer.getInteger("thread.managed.max", 0) : 0;
+
+	/** Started threads, including those that have not reached {@link #run()} yet */
+	private static final ArrayList<ManagedThread> live = new ArrayList<>();
+	private static final ArrayDeque<ManagedThread> queued = new ArrayDeque<>();
+	private static int sequence;
+	private static int created;
+	private static int peak;
+	private static long finishedCpuTime;
+	private static long clockTick;
+
+	private final Runnable target;
+	private boolean queuedStart;
+	private boolean entered;
+	private volatile int tid;
+	private volatile long cpuTime;
+
+	public ManagedThread() {
+		this(null, null);
+	}
+
+	public ManagedThread(Runnable target) {
+		this(target, null);
+	}
+
+	public ManagedThread(String name) {
+		this(null, name);
+	}
+
+	public ManagedThread(Runnable target, String name) {
+		super(null, null, name != null ? name : "Thread-" + nextSequence(), STACK_SIZE);
+		this.target = target;
+		if (MANAGED && name == null) {
+			setName(getOrigin() + '-' + getName().substring(7));
+		}
+		synchronized (ManagedThread.class) {
+			created++;
+		}
+	}
+
+	private static synchronized int nextSequence() {
+		return sequence++;
+	}
+
+	private String getOrigin() {
+		Class<?> origin = getClass() != ManagedThread.class ? getClass()
+				: target != null ? target.getClass() : Thread.class;
+		return origin.getName();
+	}
+
+	@Override
+	public void run() {
+		if (entered || Thread.currentThread() != this) {
+			run$();
+			return;
+		}
+		entered = true;
+		tid = cpuClock.myTid();
+		try {
+			run$();
+		} finally {
+			exit();
+		}
+	}
+
+	/**
+	 * The code of the thread, replaces {@code run()} of the MIDlet classes.
+	 */
+	protected void run$() {
+		runTarget();
+	}
+
+	/**
+	 * Replaces {@code super.run()} of the MIDlet classes.
+	 */
+	protected final void runTarget() {
+		if (target != null) {
+			target.run();
+		}
+	}
+
+	@Override
+	public void start() {
+		synchronized (ManagedThread.class) {
+			if (queuedStart || live.contains(this)) {
+				throw new IllegalThreadStateException();
+			}
+			if (maxRunning > 0 && startQueuedThreads() >= maxRunning) {
+				queuedStart = true;
+				queued.add(this);
+				return;
+			}
+			super.start();
+			addLive(this);
+		}
+	}
+
+	private void startQueued() {
+		queuedStart = false;
+		super.start();
+		addLive(this);
+	}
+
+	private static void addLive(ManagedThread thread) {
+		live.add(thread);
+		peak = Math.max(peak, live.size());
+	}
+
+	/**
+	 * Removes the threads that have ended without passing {@link #run()}, which happens
+	 * if {@code run()} of a subclass of a subclass does not call {@code super.run()}.
+	 * {@link #exit()} is not called for them, so the queued threads are started
+	 * by {@link #startQueuedThreads()} on the next {@link #start()} or count instead.
+	 *
+	 * @return the number of running threads
+	 */
+	private static int pruneLive() {
+		for (int i = live.size() - 1; i >= 0; i--) {
+			if (!live.get(i).isAlive()) {
+				live.remove(i);
+			}
+		}
+		return live.size();
+	}
+
+	/**
+	 * Starts the queued threads while there are free slots.
+	 *
+	 * @return the number of running threads
+	 */
+	private static int startQueuedThreads() {
+		int running = pruneLive();
+		while (!queued.isEmpty() && (maxRunning <= 0 || running < maxRunning)) {
+			queued.poll().startQueued();
+			running = live.size();
+		}
+		return running;
+	}
+
+	private void exit() {
+		cpuTime = cpuClock.threadCpuTimeNanos();
+		tid = 0;
+		synchronized (ManagedThread.class) {
+			live.remove(this);
+			finishedCpuTime += Math.max(cpuTime, 0);
+			startQueuedThreads();
+		}
+	}
+
+	/**
+	 * Returns the CPU time used by this thread in nanoseconds, or -1 if it is not known.
+	 */
+	public long getCpuTime() {
+		int tid = this.tid;
+		if (tid == 0) {
+			return cpuTime;
+		}
+		if (tid == cpuClock.myTid()) {
+			return cpuClock.threadCpuTimeNanos();
+		}
+		try (BufferedReader reader = new BufferedReader(
+				new FileReader("/proc/self/task/" + tid + "/stat"))) {
+			String line = reader.readLine();
+			// the thread name is in parentheses and may contain spaces
+			String[] fields = line.substring(line.lastIndexOf(')') + 2).split(" ");
+			long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+			return ticks * 1000000000L / getClockTick();
+		} catch (IOException | RuntimeException e) {
+			return -1;
+		}
+	}
+
+	private static synchronized long getClockTick() {
+		if (clockTick == 0) {
+			clockTick = 100;
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+				try {
+					clockTick = Math.max(Os.sysconf(OsConstants._SC_CLK_TCK), 1);
+				} catch (RuntimeException e) {
+					Log.w(TAG, "Can't get clock tick", e);
+				}
+			}
+		}
+		return clockTick;
+	}
+
+	public static synchronized int getCreatedCount() {
+		return created;
+	}
+
+	public static synchronized int getRunningCount() {
+		return startQueuedThreads();
+	}
+
+	public static synchronized int getPeakCount() {
+		return peak;
+	}
+
+	/**
+	 * Returns the running MIDlet threads sorted by CPU time, the busiest first.
+	 */
+	public static ManagedThread[] getThreads() {
+		ManagedThread[] threads;
+		synchronized (ManagedThread.class) {
+			startQueuedThreads();
+			threads = live.toArray(new ManagedThread[0]);
+		}
+		HashMap<ManagedThread, Long> times = new HashMap<>();
+		for (ManagedThread thread : threads) {
+			times.put(thread, thread.getCpuTime());
+		}
+		Arrays.sort(threads, (a, b) -> Long.compare(times.get(b), times.get(a)));
+		return threads;
+	}
+
+	public static void log() {
+		if (getCreatedCount() == 0) {
+			return;
+		}
+		long finished;
+		synchronized (ManagedThread.class) {
+			finished = finishedCpuTime;
+		}
+		Log.i(TAG, "MIDlet threads: created=" + getCreatedCount() + ", running=" + getRunningCount()
+				+ ", peak=" + getPeakCount() + ", cpu of finished=" + finished / 1000000L + " ms");
+		for (ManagedThread thread : getThreads()) {
+			Log.i(TAG, "  " + thread.getName() + ": cpu=" + thread.getCpuTime() / 1000000L + " ms");
+		}
+	}
+
+	interface CpuClock {
+		int myTid();
+
+		long threadCpuTimeNanos();
+	}
+}
@@ -19,6 +19,8 @@ package javax.microedition.shell.custom;
 
 import java.util.Date;
 
+import javax.microedition.shell.ThreadPolicy;
+
 /**
  * Timers schedule one-shot or recurring {@link TimerTask tasks} for execution.
  * Prefer {@link java.util.concurrent.ScheduledThreadPoolExecutor
@@ -26,6 +28,10 @@ import java.util.Date;
  *
  * <p>Each timer has one thread on which tasks are executed sequentially. When
  * this thread is busy running a task, runnable tasks may be subject to delays.
+ * In the shared mode ({@code timer.shared} system property) timers have no
+ * threads of their own, their tasks are run sequentially by {@link TimerScheduler}.
+ * Times are measured by a monotonic clock, so changes of the wall clock do not
+ * affect scheduled tasks.
  *
  * <p>One-shot tasks are scheduled to run at an absolute time or after a relative
  * delay.
@@ -191,6 +197,7 @@ public class Timer {
         TimerImpl(String name, boolean isDaemon) {
             this.setName(name);
             this.setDaemon(isDaemon);
+            TimerScheduler.onThreadStarted();
             this.start();
         }
 
@@ -200,6 +207,15 @@ public class Timer {
          */
         @Override
         public void run() {
+            ThreadPolicy.apply(ThreadPolicy.TIMER);
+            try {
+                loop();
+            } finally {
+                TimerScheduler.onThreadFinished();
+            }
+        }
+
+        private void loop() {
             while (true) {
                 TimerTask task;
                 synchronized (this) {
@@ -219,7 +235,7 @@ public class Timer {
                         continue;
                     }
 
-                    long currentTime = System.currentTimeMillis();
+                    long currentTime = TimerScheduler.now();
 
                     task = tasks.minimum();
                     long timeToSleep;
@@ -256,6 +272,7 @@ public class Timer {
                         }
 
                         // set time to schedule
+                        TimerScheduler.recordDelay(task.when, currentTime);
                         task.setScheduledTime(task.when);
 
                         // remove task from queue
@@ -269,7 +286,7 @@ public class Timer {
                                 task.when = task.when + task.period;
                             } else {
                                 // task is scheduled at fixed delay
-                                task.when = System.currentTimeMillis()
+                                task.when = TimerScheduler.now()
                                         + task.period;
                             }
 
@@ -359,6 +376,9 @@ public class Timer {
     @SuppressWarnings("unused")
     private final FinalizerHelper finalizer;
 
+    /* Tasks of this timer in the shared scheduler mode, impl is null then */
+    private final TimerScheduler.Queue queue;
+
     /**
      * Creates a new named {@code Timer} which may be specified to be run as a
      * daemon thread.
@@ -369,8 +389,15 @@ public class Timer {
         if (name == null) {
             throw new NullPointerException("name == null");
         }
-        this.impl = new TimerImpl(name, isDaemon);
-        this.finalizer = new FinalizerHelper(impl);
+        if (TimerScheduler.SHARED) {
+            this.impl = null;
+            this.finalizer = null;
+            this.queue = new TimerScheduler.Queue();
+        } else {
+            this.impl = new TimerImpl(name, isDaemon);
+            this.finalizer = new FinalizerHelper(impl);
+            this.queue = null;
+        }
     }
 
     /**
@@ -404,6 +431,10 @@ public class Timer {
      * on this {@code Timer}. Subsequent calls do nothing.
      */
     public void cancel() {
+        if (queue != null) {
+            TimerScheduler.getInstance().cancel(queue);
+            return;
+        }
         impl.cancel();
     }
 
@@ -416,6 +447,9 @@ public class Timer {
      *         queue.
      */
     public int purge() {
+        if (queue != null) {
+            return TimerScheduler.getInstance().purge(queue);
+        }
         synchronized (impl) {
             return impl.purge();
         }
@@ -560,16 +594,25 @@ public class Timer {
      * Schedule a task.
      */
     private void scheduleImpl(TimerTask task, long delay, long period, boolean fixed) {
+        if (queue != null) {
+            scheduleShared(task, delay, period, fixed);
+            return;
+        }
         synchronized (impl) {
             if (impl.cancelled) {
                 throw new IllegalStateException("Timer was canceled");
             }
 
-            long when = delay + System.currentTimeMillis();
+            long when = delay + TimerScheduler.now();
 
-            if (when < 0) {
+            if (delay > 0 && when < 0) {
                 throw new IllegalArgumentException("Illegal delay to start the TimerTask: " + when);
             }
+            // the clock starts with the application, a fixed-rate task
+            // with an earlier first time catches up from its start
+            if (when < 1) {
+                when = 1;
+            }
 
             synchronized (task.lock) {
                 if (task.isScheduled()) {
@@ -589,4 +632,40 @@ public class Timer {
             impl.insertTask(task);
         }
     }
+
+    private void scheduleShared(TimerTask task, long delay, long period, boolean fixed) {
+        TimerScheduler scheduler = TimerScheduler.getInstance();
+        synchronized (scheduler) {
+            if (queue.cancelled) {
+                throw new IllegalStateException("Timer was canceled");
+            }
+
+            long when = delay + TimerScheduler.now();
+
+            if (delay > 0 && when < 0) {
+                throw new IllegalArgumentException("Illegal delay to start the TimerTask: " + when);
+            }
+            // the clock starts with the application, a fixed-rate task
+            // with an earlier first time catches up from its start
+            if (when < 1) {
+                when = 1;
+            }
+
+            synchronized (task.lock) {
+                if (task.isScheduled()) {
+                    throw new IllegalStateException("TimerTask is scheduled already");
+                }
+
+                if (task.cancelled) {
+                    throw new IllegalStateException("TimerTask is canceled");
+                }
+
+                task.when = when;
+                task.period = period;
+                task.fixedRate = fixed;
+            }
+
+            scheduler.schedule(queue, task);
+        }
+    }
 }
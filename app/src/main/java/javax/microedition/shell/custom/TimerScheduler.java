@@ -0,0 +1,443 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell.custom;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.microedition.shell.ThreadPolicy;
+
+/**
+ * Runs the tasks of all {@link Timer}s on a few shared threads
+ * ({@code timer.shared} system property, {@code timer.threads} sets the number of workers).
+ * <p>
+ * Due times are kept in a hierarchical timing wheel on the monotonic clock: four levels
+ * of 64 slots with 1 ms, 64 ms, 4 s and 4.5 min resolution, plus an overflow list.
+ * The wheel thread sleeps until the next occupied slot, found with an occupancy bitmap
+ * per level, and moves tasks of a slot to the lower levels when its time comes.
+ * Due tasks go to the queue of their timer, which is run by one worker at a time,
+ * so tasks of the same timer never run concurrently and keep their order.
+ * <p>
+ * Timer threads and the delay between the due time and the start of a task
+ * are counted in both modes.
+ */
+public final class TimerScheduler implements Runnable {
+	private static final String TAG = TimerScheduler.class.getName();
+	static final boolean SHARED = Boolean.getBoolean("timer.shared");
+	private static final int WORKERS = Math.max(Integer.getInteger("timer.threads", 2), 1);
+
+	private static final int LEVELS = 4;
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int WHEEL_BITS = LEVELS * SLOT_BITS;
+
+	private static final long BASE = System.nanoTime();
+	private static final AtomicInteger threads = new AtomicInteger();
+	private static final AtomicLong fired = new AtomicLong();
+	private static final AtomicLong totalDelay = new AtomicLong();
+	private static final AtomicLong maxDelay = new AtomicLong();
+
+	private static TimerScheduler instance;
+
+	private final TimerTask[][] slots = new TimerTask[LEVELS][SLOTS];
+	private final long[] occupied = new long[LEVELS];
+	private TimerTask overflow;
+	/** All tasks due at or before this time have been moved to their timer queues */
+	private long currentTime;
+	/** The time set by {@link #advanceTo(long)} if the wheel has no thread, otherwise -1 */
+	private volatile long manualTime = -1;
+	private final Executor workers;
+
+	/**
+	 * Tasks of one timer.
+	 */
+	static final class Queue implements Runnable {
+		private final TimerScheduler scheduler;
+		private final ArrayDeque<TimerTask> due = new ArrayDeque<>();
+		private boolean running;
+		boolean cancelled;
+
+		Queue() {
+			this(getInstance());
+		}
+
+		Queue(TimerScheduler scheduler) {
+			this.scheduler = scheduler;
+		}
+
+		@Override
+		public void run() {
+			boolean completed = false;
+			try {
+				runDue();
+				completed = true;
+			} finally {
+				if (!completed) {
+					// an Error thrown by a task cancels the timer, as in Timer
+					synchronized (scheduler) {
+						cancelled = true;
+						due.clear();
+						running = false;
+					}
+				}
+			}
+		}
+
+		private void runDue() {
+			while (true) {
+				TimerTask task;
+				synchronized (scheduler) {
+					task = due.poll();
+					if (task == null || cancelled) {
+						due.clear();
+						running = false;
+						return;
+					}
+				}
+				boolean repeat;
+				synchronized (task.lock) {
+					if (task.cancelled) {
+						continue;
+					}
+					long now = scheduler.time();
+					recordDelay(task.when, now);
+					task.setScheduledTime(task.when);
+					repeat = task.period >= 0;
+					if (repeat) {
+						task.when = task.fixedRate ? task.when + task.period : now + task.period;
+					} else {
+						task.when = 0;
+					}
+				}
+				if (repeat) {
+					scheduler.schedule(this, task);
+				}
+				try {
+					task.run();
+				// J2ME compat
+				} catch (Exception e) {
+					task.cancel();
+				}
+			}
+		}
+	}
+
+	private TimerScheduler() {
+		currentTime = now();
+		workers = Executors.newFixedThreadPool(WORKERS, r -> {
+			Thread thread = new Thread(() -> {
+				ThreadPolicy.apply(ThreadPolicy.TIMER);
+				r.run();
+			}, "MIDletTimer");
+			thread.setDaemon(true);
+			threads.incrementAndGet();
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates a wheel without a thread, for tests: the time is set by {@link #advanceTo(long)}
+	 * and due timers are run by the given executor.
+	 */
+	TimerScheduler(Executor workers, long time) {
+		this.workers = workers;
+		currentTime = time;
+		manualTime = time;
+	}
+
+	static synchronized TimerScheduler getInstance() {
+		if (instance == null) {
+			instance = new TimerScheduler();
+			Thread thread = new Thread(instance, "MIDletTimerWheel");
+			thread.setDaemon(true);
+			threads.incrementAndGet();
+			thread.start();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the monotonic time in milliseconds, always positive.
+	 */
+	static long now() {
+		return (System.nanoTime() - BASE) / 1000000L + 1;
+	}
+
+	/**
+	 * Returns the current time of this wheel.
+	 */
+	long time() {
+		long time = manualTime;
+		return time >= 0 ? time : now();
+	}
+
+	synchronized void schedule(Queue queue, TimerTask task) {
+		if (queue.cancelled) {
+			return;
+		}
+		task.queue = queue;
+		long oldNext = nextTime();
+		insert(task);
+		if (nextTime() < oldNext) {
+			notify();
+		}
+	}
+
+	synchronized void cancel(Queue queue) {
+		queue.cancelled = true;
+		queue.due.clear();
+		// scheduled tasks of the timer are dropped when they are due
+	}
+
+	synchronized int purge(Queue queue) {
+		int count = 0;
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				int before = size(slots[level][slot]);
+				slots[level][slot] = removeCancelled(slots[level][slot], queue);
+				count += before - size(slots[level][slot]);
+				if (slots[level][slot] == null) {
+					occupied[level] &= ~(1L << slot);
+				}
+			}
+		}
+		int before = size(overflow);
+		overflow = removeCancelled(overflow, queue);
+		count += before - size(overflow);
+		for (Iterator<TimerTask> iterator = queue.due.iterator(); iterator.hasNext(); ) {
+			if (iterator.next().cancelled) {
+				iterator.remove();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void run() {
+		synchronized (this) {
+			while (true) {
+				long now = now();
+				advanceTo(now);
+				long next = nextTime();
+				try {
+					if (next == Long.MAX_VALUE) {
+						wait();
+					} else {
+						wait(next - now);
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the tasks due at or before the given time to their timer queues.
+	 */
+	synchronized void advanceTo(long time) {
+		if (manualTime >= 0) {
+			manualTime = time;
+		}
+		long next;
+		while ((next = nextTime()) <= time) {
+			advance(next);
+		}
+	}
+
+	/**
+	 * Moves the wheel to the given time, which must be the result of {@link #nextTime()}.
+	 */
+	private void advance(long time) {
+		currentTime = time;
+		if ((time & (1L << WHEEL_BITS) - 1) == 0) {
+			TimerTask list = overflow;
+			overflow = null;
+			reinsert(list);
+		}
+		for (int level = LEVELS - 1; level > 0; level--) {
+			int shift = level * SLOT_BITS;
+			if ((time & (1L << shift) - 1) == 0) {
+				int slot = (int) (time >> shift) & SLOT_MASK;
+				TimerTask list = slots[level][slot];
+				slots[level][slot] = null;
+				occupied[level] &= ~(1L << slot);
+				reinsert(list);
+			}
+		}
+		int slot = (int) time & SLOT_MASK;
+		TimerTask list = slots[0][slot];
+		slots[0][slot] = null;
+		occupied[0] &= ~(1L << slot);
+		reinsert(list);
+	}
+
+	private void reinsert(TimerTask list) {
+		while (list != null) {
+			TimerTask task = list;
+			list = task.next;
+			task.next = null;
+			insert(task);
+		}
+	}
+
+	private void insert(TimerTask task) {
+		long when;
+		synchronized (task.lock) {
+			if (task.cancelled || task.queue.cancelled) {
+				return;
+			}
+			when = task.when;
+		}
+		if (when <= currentTime) {
+			dispatch(task);
+			return;
+		}
+		for (int level = 0; level < LEVELS; level++) {
+			int shift = (level + 1) * SLOT_BITS;
+			if (when >> shift == currentTime >> shift) {
+				int slot = (int) (when >> level * SLOT_BITS) & SLOT_MASK;
+				task.next = slots[level][slot];
+				slots[level][slot] = task;
+				occupied[level] |= 1L << slot;
+				return;
+			}
+		}
+		task.next = overflow;
+		overflow = task;
+	}
+
+	private void dispatch(TimerTask task) {
+		Queue queue = task.queue;
+		queue.due.add(task);
+		if (!queue.running) {
+			queue.running = true;
+			workers.execute(queue);
+		}
+	}
+
+	/**
+	 * Returns the time of the first occupied slot, or of the next overflow check.
+	 */
+	private long nextTime() {
+		long next = overflow == null ? Long.MAX_VALUE :
+				(currentTime >> WHEEL_BITS) + 1 << WHEEL_BITS;
+		for (int level = 0; level < LEVELS; level++) {
+			long bits = occupied[level];
+			if (bits == 0) {
+				continue;
+			}
+			int shift = level * SLOT_BITS;
+			int current = (int) (currentTime >> shift) & SLOT_MASK;
+			// slots at or before the current one are empty
+			long later = current == SLOT_MASK ? 0 : bits & -1L << current + 1;
+			if (later == 0) {
+				continue;
+			}
+			int slot = Long.numberOfTrailingZeros(later);
+			long time = (currentTime >> shift + SLOT_BITS << SLOT_BITS | slot) << shift;
+			next = Math.min(next, time);
+		}
+		return next;
+	}
+
+	private static TimerTask removeCancelled(TimerTask list, Queue queue) {
+		TimerTask head = null;
+		TimerTask tail = null;
+		while (list != null) {
+			TimerTask task = list;
+			list = task.next;
+			task.next = null;
+			if (task.queue == queue && task.cancelled) {
+				continue;
+			}
+			if (tail == null) {
+				head = task;
+			} else {
+				tail.next = task;
+			}
+			tail = task;
+		}
+		return head;
+	}
+
+	private static int size(TimerTask list) {
+		int size = 0;
+		for (; list != null; list = list.next) {
+			size++;
+		}
+		return size;
+	}
+
+	static void onThreadStarted() {
+		threads.incrementAndGet();
+	}
+
+	static void onThreadFinished() {
+		threads.decrementAndGet();
+	}
+
+	static void recordDelay(long when, long now) {
+		long delay = Math.max(now - when, 0);
+		ThreadPolicy.recordLatency(ThreadPolicy.TIMER, delay * 1000000L);
+		fired.incrementAndGet();
+		totalDelay.addAndGet(delay);
+		long max;
+		while (delay > (max = maxDelay.get()) && !maxDelay.compareAndSet(max, delay)) ;
+	}
+
+	/**
+	 * Returns the number of live threads running timer tasks.
+	 */
+	public static int getThreadCount() {
+		return threads.get();
+	}
+
+	public static long getFiredCount() {
+		return fired.get();
+	}
+
+	/**
+	 * Returns the average delay of task starts after their due time, in milliseconds.
+	 */
+	public static float getAverageDelay() {
+		long count = fired.get();
+		return count == 0 ? 0 : (float) totalDelay.get() / count;
+	}
+
+	/**
+	 * Returns the longest delay of a task start after its due time, in milliseconds.
+	 */
+	public static long getMaxDelay() {
+		return maxDelay.get();
+	}
+
+	public static void log() {
+		if (getFiredCount() > 0) {
+			Log.i(TAG, "Timers: threads=" + getThreadCount() + ", fired=" + getFiredCount()
+					+ ", average delay=" + getAverageDelay() + " ms, max delay=" + getMaxDelay() + " ms");
+		}
+	}
+}
@@ -38,9 +38,14 @@ public abstract class TimerTask implements Runnable {
 
     boolean fixedRate;
 
+    /* Slots used by TimerScheduler: the timer of the task and the next task in a wheel slot */
+    TimerScheduler.Queue queue;
+
+    TimerTask next;
+
     /*
      * The time when task will be executed, or the time when task was launched
-     * if this is task in progress.
+     * if this is task in progress. Like when, it is counted by TimerScheduler.now().
      */
     private long scheduledTime;
 
@@ -105,7 +110,10 @@ public abstract class TimerTask implements Runnable {
      */
     public long scheduledExecutionTime() {
         synchronized (lock) {
-            return scheduledTime;
+            if (scheduledTime == 0) {
+                return 0;
+            }
+            return System.currentTimeMillis() - (TimerScheduler.now() - scheduledTime);
         }
     }
 
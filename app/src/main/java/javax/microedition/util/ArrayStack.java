@@ -29,7 +29,7 @@ public class ArrayStack<E> {
 
 	public synchronized void push(E value) {
 		if (index >= data.length - 1) {
-			Object[] temp = new Object[data.length + DELTA];
+			Object[] temp = new Object[Math.max(data.length * 2, DELTA)];
 			System.arraycopy(data, 0, temp, 0, data.length);
 			data = temp;
 		}
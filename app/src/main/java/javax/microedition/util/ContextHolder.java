@@ -193,7 +193,8 @@ public class ContextHolder {
 	}
 
 	public static MicroActivity getActivity() {
-		return currentActivity.get();
+		WeakReference<MicroActivity> activity = currentActivity;
+		return activity == null ? null : activity.get();
 	}
 
 	public static boolean vibrate(int duration) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of reusable objects without locks.
+ * <p>
+ * Each thread first uses a small cache of its own, so a thread that recycles the objects
+ * it obtains does not touch shared state at all. The shared part is an array of slots
+ * taken and filled with compare-and-set, each thread starts searching at its own slot
+ * so that the UI thread and the event thread rarely meet on the same one.
+ * Objects recycled into a full pool are left to the garbage collector.
+ *
+ * @param <E> type of pooled objects
+ */
+public class ObjectPool<E> {
+	private static final int LOCAL_SIZE = 8;
+
+	private final AtomicReferenceArray<E> slots;
+	private final int mask;
+	/** Objects in the shared slots, checked before searching them */
+	private final AtomicInteger available = new AtomicInteger();
+	private final ThreadLocal<Cache> cache = new ThreadLocal<Cache>() {
+		@Override
+		protected Cache initialValue() {
+			return new Cache();
+		}
+	};
+
+	/**
+	 * @param capacity number of shared slots, rounded up to a power of two
+	 */
+	public ObjectPool(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		slots = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Returns a pooled object or null if the pool is empty.
+	 */
+	public E obtain() {
+		Cache cache = this.cache.get();
+		if (cache.size > 0) {
+			//noinspection unchecked
+			E value = (E) cache.items[--cache.size];
+			cache.items[cache.size] = null;
+			return value;
+		}
+		if (available.get() <= 0) {
+			return null;
+		}
+		int start = cache.home;
+		for (int i = 0; i <= mask; i++) {
+			int index = start + i & mask;
+			E value = slots.get(index);
+			if (value != null && slots.compareAndSet(index, value, null)) {
+				available.decrementAndGet();
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the object to the pool, the caller must not use it afterwards.
+	 */
+	public void recycle(E value) {
+		Cache cache = this.cache.get();
+		if (cache.size < LOCAL_SIZE) {
+			cache.items[cache.size++] = value;
+			return;
+		}
+		int start = cache.home;
+		for (int i = 0; i <= mask; i++) {
+			int index = start + i & mask;
+			if (slots.get(index) == null && slots.compareAndSet(index, null, value)) {
+				available.incrementAndGet();
+				return;
+			}
+		}
+	}
+
+	private static final class Cache {
+		final Object[] items = new Object[LOCAL_SIZE];
+		/** First shared slot searched by this thread */
+		final int home = (int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16);
+		int size;
+	}
+}
@@ -16,28 +16,36 @@
 
 package mmpp.media;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
-import javax.microedition.media.Manager;
 import javax.microedition.media.MediaException;
 import javax.microedition.media.Player;
+import javax.microedition.media.SampleBank;
 import javax.microedition.media.control.VolumeControl;
 import javax.microedition.util.ContextHolder;
 
+import ru.playsoftware.j2meloader.util.IOUtils;
+
 public class MediaPlayer {
 	private Player player;
+	private byte[] data;
 	private boolean loop;
 	private String currentVolume = String.valueOf(MAX_VOLUME);
+	private int volumeLevel = 100;
 	private static final int MAX_VOLUME = 5;
 
 	public void setMediaLocation(String location) {
 		try {
 			InputStream is = ContextHolder.getResourceAsStream(null, location);
-			player = Manager.createPlayer(is, "audio/midi");
-			player.realize();
-			is.close();
+			byte[] data;
+			try {
+				data = IOUtils.toByteArray(is);
+			} finally {
+				is.close();
+			}
+			setPlayer(data);
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (MediaException e) {
@@ -47,10 +55,7 @@ public class MediaPlayer {
 
 	public void setMediaSource(byte[] buffer, int offset, int length) {
 		try {
-			ByteArrayInputStream bis = new ByteArrayInputStream(buffer, offset, length);
-			player = Manager.createPlayer(bis, "audio/midi");
-			player.realize();
-			bis.close();
+			setPlayer(Arrays.copyOfRange(buffer, offset, offset + length));
 		} catch (IOException e) {
 			e.printStackTrace();
 		} catch (MediaException e) {
@@ -58,11 +63,39 @@ public class MediaPlayer {
 		}
 	}
 
-	public void setVolumeLevel(String level) {
-		int setLevel = Integer.valueOf(level) * 100 / MAX_VOLUME;
+	private void setPlayer(byte[] data) throws IOException, MediaException {
+		SampleBank.release(player);
+		player = null;
+		this.data = data;
+		acquirePlayer();
+	}
+
+	/**
+	 * Takes a player for the current data from the bank again after {@link #stop()}.
+	 */
+	private Player acquirePlayer() throws IOException, MediaException {
+		if (player == null && data != null) {
+			player = SampleBank.acquire(data, "audio/midi");
+			player.realize();
+			applyVolume();
+			player.setLoopCount(loop ? -1 : 1);
+		}
+		return player;
+	}
+
+	private void applyVolume() {
 		VolumeControl volumeControl = (VolumeControl) player.getControl("VolumeControl");
-		volumeControl.setLevel(setLevel);
+		if (volumeControl != null) {
+			volumeControl.setLevel(volumeLevel);
+		}
+	}
+
+	public void setVolumeLevel(String level) {
+		volumeLevel = Integer.valueOf(level) * 100 / MAX_VOLUME;
 		currentVolume = level;
+		if (player != null) {
+			applyVolume();
+		}
 	}
 
 	public String getVolumeLevel() {
@@ -71,13 +104,19 @@ public class MediaPlayer {
 
 	public void start() {
 		try {
-			player.start();
-		} catch (MediaException e) {
+			Player player = acquirePlayer();
+			if (player != null) {
+				player.start();
+			}
+		} catch (IOException | MediaException e) {
 			e.printStackTrace();
 		}
 	}
 
 	public void pause() {
+		if (player == null) {
+			return;
+		}
 		try {
 			player.stop();
 		} catch (MediaException e) {
@@ -86,21 +125,22 @@ public class MediaPlayer {
 	}
 
 	public void resume() {
-		try {
-			player.start();
-		} catch (MediaException e) {
-			e.printStackTrace();
-		}
+		start();
 	}
 
+	/**
+	 * Gives the player back to the bank, the next {@link #start()} takes it again.
+	 */
 	public void stop() {
-		player.close();
+		SampleBank.release(player);
+		player = null;
 	}
 
 	public void setPlayBackLoop(boolean val) {
 		loop = val;
-		int loopCount = val ? -1 : 1;
-		player.setLoopCount(loopCount);
+		if (player != null) {
+			player.setLoopCount(val ? -1 : 1);
+		}
 	}
 
 	public boolean getPlayBackLoop() {
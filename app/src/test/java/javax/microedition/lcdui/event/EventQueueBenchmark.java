@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.lcdui.event;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares {@link EventQueue} with {@link LegacyEventQueue}:
+ * <ul>
+ * <li>throughput of producer threads posting events that are never coalesced,</li>
+ * <li>the time from posting an event to an idle queue until the event thread runs it.</li>
+ * </ul>
+ * Not a unit test, run {@link #main(String[])} on a host JVM with the number of
+ * producers and the events per producer as optional arguments.
+ */
+public class EventQueueBenchmark {
+	private static final int ROUNDS = 5;
+	private static final int WAKEUPS = 2000;
+
+	public static void main(String[] args) throws InterruptedException {
+		int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int events = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		System.out.println(producers + " producers, " + events + " events each, "
+				+ Runtime.getRuntime().availableProcessors() + " CPUs");
+		for (int round = 1; round <= ROUNDS; round++) {
+			// the first rounds warm up the JIT
+			System.out.println("round " + round + ":");
+			report("EventQueue", new LockFreeQueue(), producers, events);
+			report("legacy", new LockedQueue(), producers, events);
+		}
+	}
+
+	private static void report(String name, Queue queue, int producers, int events)
+			throws InterruptedException {
+		queue.start();
+		try {
+			long total = (long) producers * events;
+			long nanos = post(queue, producers, events);
+			long[] wakeups = wakeUp(queue);
+			System.out.printf("  %-10s %7.1f ns/event, wakeup p50=%.1f us, p99=%.1f us, max=%.1f us%n",
+					name, (double) nanos / total, wakeups[WAKEUPS / 2] / 1000.0,
+					wakeups[WAKEUPS * 99 / 100] / 1000.0, wakeups[WAKEUPS - 1] / 1000.0);
+		} finally {
+			queue.stop();
+		}
+	}
+
+	/**
+	 * Returns the time until all the events posted by the producers are processed.
+	 */
+	private static long post(Queue queue, int producers, int events) throws InterruptedException {
+		CountDownLatch processed = new CountDownLatch(1);
+		long total = (long) producers * events;
+		long[] count = {0};
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; i++) {
+			threads[i] = new Thread(() -> {
+				for (int n = 0; n < events; n++) {
+					queue.post(new TestEvent(() -> {
+						// only the event thread runs the events
+						if (++count[0] == total) {
+							processed.countDown();
+						}
+					}));
+				}
+			}, "producer-" + i);
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		processed.await();
+		long nanos = System.nanoTime() - start;
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return nanos;
+	}
+
+	/**
+	 * Posts single events to the idle queue, returns the sorted delays until they run.
+	 */
+	private static long[] wakeUp(Queue queue) throws InterruptedException {
+		long[] delays = new long[WAKEUPS];
+		for (int i = 0; i < WAKEUPS; i++) {
+			// let the event thread go idle
+			Thread.sleep(1);
+			CountDownLatch processed = new CountDownLatch(1);
+			int index = i;
+			long start = System.nanoTime();
+			queue.post(new TestEvent(() -> {
+				delays[index] = System.nanoTime() - start;
+				processed.countDown();
+			}));
+			processed.await();
+		}
+		Arrays.sort(delays);
+		return delays;
+	}
+
+	private interface Queue {
+		void start();
+
+		void post(Event event);
+
+		void stop();
+	}
+
+	private static class LockFreeQueue implements Queue {
+		private final EventQueue queue = new EventQueue();
+
+		@Override
+		public void start() {
+			queue.startProcessing();
+		}
+
+		@Override
+		public void post(Event event) {
+			queue.postEvent(event);
+		}
+
+		@Override
+		public void stop() {
+			queue.stopProcessing();
+		}
+	}
+
+	private static class LockedQueue implements Queue {
+		private final LegacyEventQueue queue = new LegacyEventQueue();
+
+		@Override
+		public void start() {
+			queue.startProcessing();
+		}
+
+		@Override
+		public void post(Event event) {
+			queue.postEvent(event);
+		}
+
+		@Override
+		public void stop() {
+			queue.stopProcessing();
+		}
+	}
+
+	private static class TestEvent extends Event {
+		private final Runnable action;
+
+		TestEvent(Runnable action) {
+			this.action = action;
+		}
+
+		@Override
+		public void process() {
+			action.run();
+		}
+
+		@Override
+		public void recycle() {
+		}
+
+		@Override
+		public void enterQueue() {
+		}
+
+		@Override
+		public void leaveQueue() {
+		}
+
+		@Override
+		public boolean placeableAfter(Event event) {
+			return true;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012 Kulikov Dmitriy
+ * Copyright 2017 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.lcdui.event;
+
+import javax.microedition.util.LinkedList;
+
+/**
+ * The EventQueue before the lock-free rewrite, kept as the reference for
+ * {@link EventQueueBenchmark}. Only the immediate mode and serviceRepaints() are removed.
+ */
+class LegacyEventQueue implements Runnable {
+	private final LinkedList<Event> queue = new LinkedList<>();
+	private final Object waiter = new Object();
+	private final Object interlock = new Object();
+	private final Object callbackLock = new Object();
+
+	private boolean enabled;
+	private Thread thread;
+	private boolean running;
+	private boolean continuerun;
+
+	public void postEvent(Event event) {
+		boolean empty;
+
+		synchronized (queue) {
+			empty = queue.isEmpty();
+
+			if (empty || event.placeableAfter(queue.getLast())) {
+				queue.addLast(event);
+				event.enterQueue();
+			} else {
+				event.recycle();
+			}
+		}
+
+		if (empty) {
+			synchronized (waiter) {
+				if (running) {
+					continuerun = true;
+				} else {
+					waiter.notifyAll();
+				}
+			}
+		}
+	}
+
+	public void startProcessing() {
+		enabled = true;
+
+		if (thread == null) {
+			thread = new Thread(this, "MIDletEventQueue");
+			thread.start();
+		}
+	}
+
+	public void stopProcessing() {
+		enabled = false;
+
+		synchronized (waiter) {
+			waiter.notifyAll();
+		}
+
+		synchronized (interlock) {
+			thread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		synchronized (interlock) {
+			running = true;
+
+			while (enabled) {
+
+				Event event;
+				synchronized (queue) {
+					event = queue.removeFirst();
+				}
+
+				if (event != null) {
+					synchronized (callbackLock) {
+						event.run();
+					}
+				} else {
+					synchronized (waiter) {
+						if (continuerun) {
+							continuerun = false;
+						} else {
+							running = false;
+
+							try {
+								waiter.wait();
+							} catch (InterruptedException ie) {
+								ie.printStackTrace();
+							}
+
+							running = true;
+						}
+					}
+				}
+			}
+		}
+	}
+}
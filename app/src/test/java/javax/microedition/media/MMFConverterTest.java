@@ -0,0 +1,283 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+
+/**
+ * Compares the output of {@link MMFConverter} with {@link LegacyMMFConverter} on generated
+ * SMAF files. The files avoid the cases where the old converter was wrong: events that write
+ * nothing (control change, pitch bend, NOP) and note offs after the end of the sequence.
+ */
+public class MMFConverterTest {
+
+	@Test
+	public void notesAndPrograms() throws Exception {
+		Sequence seq = new Sequence()
+				.program(0, 0, 12)
+				.noteVelocity(0, 0, 60, 100, 240)
+				.note(120, 1, 64, 480)
+				.note(240, 0, 67, 120)
+				.program(600, 1, 40)
+				.noteVelocity(600, 1, 72, 20, 60)
+				.eos(700);
+		assertSameOutput(seq.toSmaf(MMFConverter.FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS));
+		assertSameOutput(seq.toSmaf(MMFConverter.FORMAT_TYPE_HANDY_PHONE));
+	}
+
+	@Test
+	public void chordsEndingTogether() throws Exception {
+		Sequence seq = new Sequence()
+				.note(0, 0, 60, 100)
+				.note(0, 0, 64, 100)
+				.note(0, 1, 67, 100)
+				.note(50, 2, 48, 50)
+				.note(100, 0, 62, 0)
+				.note(100, 1, 65, 0)
+				.eos(100);
+		assertSameOutput(seq.toSmaf(MMFConverter.FORMAT_TYPE_MOBILE_STANDARD_COMPRESS));
+	}
+
+	@Test
+	public void longDurationsAndGates() throws Exception {
+		Sequence seq = new Sequence()
+				.note(0, 0, 60, 20000)
+				.note(200, 3, 61, 127)
+				.note(16000, 3, 62, 128)
+				.note(16383, 15, 63, 3000)
+				.eos(20383);
+		assertSameOutput(seq.toSmaf(MMFConverter.FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS));
+	}
+
+	@Test
+	public void setupChunksAndSystemExclusive() throws Exception {
+		Sequence seq = new Sequence()
+				.sysex(0, new byte[]{0x43, 0x79, 0x06, 0x7F, (byte) 0xF7})
+				.note(10, 0, 60, 30)
+				.sysex(20, new byte[]{(byte) 0xF7})
+				.note(20, 0, 62, 30)
+				.eos(60);
+		byte[] smaf = seq.toSmaf(MMFConverter.FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS, "Mtsu", "MspI");
+		assertSameOutput(smaf);
+	}
+
+	@Test
+	public void randomSequences() throws Exception {
+		Random random = new Random(20211011);
+		for (int i = 0; i < 500; i++) {
+			Sequence seq = new Sequence();
+			int time = 0;
+			int end = 0;
+			for (int n = random.nextInt(200); n > 0; n--) {
+				time += random.nextInt(8) == 0 ? 128 + random.nextInt(1000) : random.nextInt(40);
+				int channel = random.nextInt(16);
+				switch (random.nextInt(5)) {
+					case 0:
+						seq.program(time, channel, random.nextInt(128));
+						break;
+					case 1:
+						seq.note(time, channel, random.nextInt(128), random.nextInt(600));
+						break;
+					default:
+						int gate = random.nextInt(4) == 0 ? 0 : random.nextInt(600);
+						seq.noteVelocity(time, channel, random.nextInt(128), random.nextInt(128), gate);
+						end = Math.max(end, time + gate);
+						break;
+				}
+				end = Math.max(end, time + 600);
+			}
+			seq.eos(end);
+			byte format = (byte) random.nextInt(3);
+			assertSameOutput(seq.toSmaf(format));
+		}
+	}
+
+	@Test
+	public void skippedEventsKeepTiming() throws Exception {
+		Sequence expected = new Sequence()
+				.note(0, 0, 60, 100)
+				.note(150, 0, 62, 100)
+				.eos(250);
+		Sequence withControls = new Sequence()
+				.note(0, 0, 60, 100)
+				.control(50, 0, 7, 100)
+				.pitchBend(70, 0, 0, 64)
+				.nop(90)
+				.note(150, 0, 62, 100)
+				.eos(250);
+		byte format = MMFConverter.FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS;
+		assertArrayEquals(new LegacyMMFConverter().convertToMDI(expected.toSmaf(format)),
+				new MMFConverter().convertToMDI(withControls.toSmaf(format)));
+	}
+
+	@Test
+	public void cachedResultIsCopied() throws Exception {
+		byte[] smaf = new Sequence()
+				.note(0, 0, 60, 100)
+				.eos(100)
+				.toSmaf(MMFConverter.FORMAT_TYPE_MOBILE_STANDARD_NO_COMPRESS);
+		byte[] first = new MMFConverter().convertToMDI(smaf);
+		byte[] expected = first.clone();
+		first[first.length - 1] = 0x7F;
+		byte[] second = new MMFConverter().convertToMDI(smaf);
+		assertNotSame(first, second);
+		assertArrayEquals(expected, second);
+	}
+
+	private static void assertSameOutput(byte[] smaf) throws Exception {
+		byte[] expected = new LegacyMMFConverter().convertToMDI(smaf);
+		assertArrayEquals(expected, new MMFConverter().convertToMDI(smaf));
+	}
+
+	/**
+	 * Writes SMAF sequence data from events at absolute times, which must not decrease.
+	 */
+	private static final class Sequence {
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private int time;
+
+		Sequence note(int time, int channel, int note, int gate) {
+			at(time);
+			out.write(0x80 | channel);
+			out.write(note);
+			writeVariableLength(gate);
+			return this;
+		}
+
+		Sequence noteVelocity(int time, int channel, int note, int velocity, int gate) {
+			at(time);
+			out.write(0x90 | channel);
+			out.write(note);
+			out.write(velocity);
+			writeVariableLength(gate);
+			return this;
+		}
+
+		Sequence program(int time, int channel, int program) {
+			at(time);
+			out.write(0xC0 | channel);
+			out.write(program);
+			return this;
+		}
+
+		Sequence control(int time, int channel, int control, int value) {
+			at(time);
+			out.write(0xB0 | channel);
+			out.write(control);
+			out.write(value);
+			return this;
+		}
+
+		Sequence pitchBend(int time, int channel, int lsb, int msb) {
+			at(time);
+			out.write(0xE0 | channel);
+			out.write(lsb);
+			out.write(msb);
+			return this;
+		}
+
+		Sequence sysex(int time, byte[] data) {
+			at(time);
+			out.write(0xF0);
+			writeVariableLength(data.length);
+			out.write(data, 0, data.length);
+			return this;
+		}
+
+		Sequence nop(int time) {
+			at(time);
+			out.write(0xFF);
+			out.write(0x00);
+			return this;
+		}
+
+		Sequence eos(int time) {
+			at(time);
+			out.write(0xFF);
+			out.write(0x2F);
+			out.write(0x00);
+			return this;
+		}
+
+		private void at(int time) {
+			int duration = time - this.time;
+			if (duration < 0 || duration > 0x3FFF) {
+				throw new IllegalArgumentException("Duration: " + duration);
+			}
+			this.time = time;
+			if (duration > 0x7F) {
+				out.write(0x80 | duration >> 7);
+			}
+			out.write(duration & 0x7F);
+		}
+
+		private void writeVariableLength(int value) {
+			for (int shift = 28; shift > 0; shift -= 7) {
+				if (value >>> shift != 0) {
+					out.write(value >>> shift & 0x7F | 0x80);
+				}
+			}
+			out.write(value & 0x7F);
+		}
+
+		/**
+		 * Wraps the sequence in a SMAF file, with empty chunks of the given ids before it.
+		 */
+		byte[] toSmaf(byte formatType, String... chunks) {
+			ByteArrayOutputStream mtr = new ByteArrayOutputStream();
+			mtr.write(formatType);
+			mtr.write(0); // sequence type
+			mtr.write(0x02); // 4 ms duration base
+			mtr.write(0x02); // 4 ms gate time base
+			int channelStatus = formatType == MMFConverter.FORMAT_TYPE_HANDY_PHONE ? 2 : 16;
+			for (int i = 0; i < channelStatus; i++) {
+				mtr.write(0);
+			}
+			for (String id : chunks) {
+				writeChunk(mtr, id, new byte[3]);
+			}
+			writeChunk(mtr, "Mtsq", out.toByteArray());
+
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			writeChunk(body, "CNTI", new byte[]{0, 1, 2, 3, 4});
+			writeChunk(body, "OPDA", new byte[0]);
+			writeChunk(body, "MTR\0", mtr.toByteArray());
+
+			ByteArrayOutputStream smaf = new ByteArrayOutputStream();
+			writeChunk(smaf, "MMMD", body.toByteArray());
+			return smaf.toByteArray();
+		}
+
+		private static void writeChunk(ByteArrayOutputStream out, String id, byte[] data) {
+			for (int i = 0; i < 4; i++) {
+				out.write(id.charAt(i));
+			}
+			int size = data.length;
+			out.write(size >>> 24);
+			out.write(size >>> 16);
+			out.write(size >>> 8);
+			out.write(size);
+			out.write(data, 0, size);
+		}
+	}
+}
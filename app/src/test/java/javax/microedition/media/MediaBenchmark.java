@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import javax.microedition.media.synth.AudioEngine;
+import javax.microedition.media.synth.Renderer;
+import javax.microedition.media.synth.Sequence;
+import javax.microedition.media.tone.ToneSequence;
+
+/**
+ * Times the host side of the media pipeline on the files in {@code benchmark/}:
+ * a tone sequence, a MIDI file and a SMAF file. For each step it reports the time per call,
+ * the throughput in input bytes and the bytes allocated per call.
+ * <p>
+ * The synthesizer is timed the way {@link AudioEngine} runs it with
+ * {@code media.synth.sink=null}: blocks are mixed and discarded, without pacing,
+ * so the result is the CPU time per second of audio.
+ * <p>
+ * Not a unit test, run {@link #main(String[])} on a host JVM.
+ */
+public class MediaBenchmark {
+	private static final int ROUNDS = 3;
+	private static final int BLOCK_FRAMES = 512;
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		byte[] tone = load("tune.jts");
+		byte[] midi = load("tune.mid");
+		byte[] smaf = load("tune.mmf");
+		for (int round = 1; round <= ROUNDS; round++) {
+			// the first rounds warm up the JIT
+			System.out.println("round " + round + ":");
+			measure("tone compile", tone.length, 2000, () -> {
+				ToneSequence sequence = new ToneSequence(tone);
+				sequence.process();
+				Sequence.parse(sequence.getMidiFile());
+			});
+			measure("tone cached", tone.length, 200000, () -> ToneSequenceCache.compile(tone));
+			measure("midi parse", midi.length, 20000, () -> Sequence.parse(midi));
+			// a cache miss in each call: the first bytes of CNTI are skipped by the conversion
+			// but change the key, so this includes hashing and caching the result
+			int[] counter = {0};
+			measure("mmf convert", smaf.length, 5000, () -> {
+				byte[] data = smaf.clone();
+				int n = counter[0]++;
+				data[16] = (byte) n;
+				data[17] = (byte) (n >> 8);
+				data[18] = (byte) (n >> 16);
+				new MMFConverter().convertToMDI(data);
+			});
+			measure("mmf cached", smaf.length, 20000, () -> new MMFConverter().convertToMDI(smaf));
+			Sequence sequence = Sequence.parse(midi);
+			measure("renderer setup", 0, 20000, () -> {
+				new Renderer(AudioEngine.SAMPLE_RATE).setSequence(sequence);
+			});
+			render(sequence);
+		}
+	}
+
+	private static void measure(String name, int bytes, int calls, Task task) throws Exception {
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			task.run();
+		}
+		long nanos = System.nanoTime() - start;
+		allocated = getAllocatedBytes() - allocated;
+		System.out.printf("  %-15s %9.2f us/call, %8s MB/s, %8s bytes/call%n", name,
+				nanos / 1000.0 / calls,
+				bytes == 0 ? "-" : String.format("%.2f", (double) bytes * calls * 1000 / nanos),
+				allocated < 0 ? "?" : String.valueOf(allocated / calls));
+	}
+
+	private static void render(Sequence sequence) {
+		float[] mix = new float[BLOCK_FRAMES * 2];
+		Renderer renderer = new Renderer(AudioEngine.SAMPLE_RATE);
+		renderer.setSequence(sequence);
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		long frames = 0;
+		do {
+			frames += BLOCK_FRAMES;
+		} while (!renderer.render(mix, BLOCK_FRAMES));
+		long nanos = System.nanoTime() - start;
+		allocated = getAllocatedBytes() - allocated;
+		long blocks = frames / BLOCK_FRAMES;
+		System.out.printf("  %-15s %9.2f us/block, %8.1fx real time, %8s bytes/block%n", "synth render",
+				nanos / 1000.0 / blocks, frames * 1e9 / AudioEngine.SAMPLE_RATE / nanos,
+				allocated < 0 ? "?" : String.valueOf(allocated / blocks));
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread, or a negative value if the JVM
+	 * does not count them.
+	 */
+	private static long getAllocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static byte[] load(String name) throws IOException {
+		try (InputStream in = MediaBenchmark.class.getResourceAsStream("benchmark/" + name)) {
+			if (in == null) {
+				throw new IOException("Not found: " + name);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		}
+	}
+
+	private interface Task {
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Builds standard MIDI files for the tests.
+ */
+final class MidiFile {
+	private final ByteArrayOutputStream tracks = new ByteArrayOutputStream();
+	private final int format;
+	private final int division;
+	private int trackCount;
+
+	MidiFile(int format, int division) {
+		this.format = format;
+		this.division = division;
+	}
+
+	MidiFile track(Track track) {
+		byte[] data = track.out.toByteArray();
+		writeInt(tracks, 0x4D54726B); // MTrk
+		writeInt(tracks, data.length);
+		tracks.write(data, 0, data.length);
+		trackCount++;
+		return this;
+	}
+
+	byte[] toByteArray() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeInt(out, 0x4D546864); // MThd
+		writeInt(out, 6);
+		out.write(format >> 8);
+		out.write(format);
+		out.write(trackCount >> 8);
+		out.write(trackCount);
+		out.write(division >> 8);
+		out.write(division);
+		byte[] data = tracks.toByteArray();
+		out.write(data, 0, data.length);
+		return out.toByteArray();
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	static final class Track {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		/**
+		 * Writes an event with the given delta time in ticks.
+		 */
+		Track event(int delta, int... bytes) {
+			writeVarLen(delta);
+			for (int b : bytes) {
+				out.write(b);
+			}
+			return this;
+		}
+
+		Track tempo(int delta, int usecPerQuarter) {
+			return event(delta, 0xFF, 0x51, 0x03,
+					usecPerQuarter >> 16 & 0xFF, usecPerQuarter >> 8 & 0xFF, usecPerQuarter & 0xFF);
+		}
+
+		Track end(int delta) {
+			return event(delta, 0xFF, 0x2F, 0x00);
+		}
+
+		private void writeVarLen(int value) {
+			for (int shift = 21; shift > 0; shift -= 7) {
+				if (value >>> shift != 0) {
+					out.write(value >>> shift & 0x7F | 0x80);
+				}
+			}
+			out.write(value & 0x7F);
+		}
+	}
+}
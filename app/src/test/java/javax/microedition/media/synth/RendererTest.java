@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RendererTest {
+	private static final int SAMPLE_RATE = 8000;
+
+	/** One second: a note from 0.25 s to 0.75 s, program 10 from 0.5 s */
+	private static Sequence createSequence() throws IOException {
+		return Sequence.parse(new MidiFile(0, 96).track(new MidiFile.Track()
+				.event(48, 0x90, 60, 100)
+				.event(48, 0xC0, 10)
+				.event(48, 0x80, 60, 0)
+				.end(48)).toByteArray());
+	}
+
+	@Test
+	public void renderingIsReproducible() throws IOException {
+		float[] first = render(createSequence(), SAMPLE_RATE);
+		float[] second = render(createSequence(), SAMPLE_RATE);
+		assertArrayEquals(first, second, 0.0f);
+
+		// silent before the note, sounding during it
+		assertTrue(isSilent(first, 0, SAMPLE_RATE / 4));
+		assertFalse(isSilent(first, SAMPLE_RATE / 4, SAMPLE_RATE / 2));
+	}
+
+	@Test
+	public void positionFollowsRenderedFrames() throws IOException {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		renderer.setSequence(createSequence());
+		renderer.render(new float[SAMPLE_RATE], SAMPLE_RATE / 2);
+		assertEquals(500000, renderer.getPosition());
+		assertEquals(1000000, renderer.getDuration());
+	}
+
+	@Test
+	public void endOfSequence() throws IOException {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		renderer.setSequence(createSequence());
+		float[] buffer = new float[SAMPLE_RATE * 2];
+		assertFalse(renderer.render(buffer, SAMPLE_RATE));
+		assertFalse(renderer.isEnded());
+		assertTrue(renderer.render(buffer, SAMPLE_RATE / 10));
+		assertTrue(renderer.isEnded());
+		assertEquals(1000000, renderer.getPosition());
+	}
+
+	@Test
+	public void looping() throws IOException {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		renderer.setSequence(createSequence());
+		renderer.setLooping(true);
+		float[] buffer = new float[SAMPLE_RATE * 3];
+		assertFalse(renderer.render(buffer, SAMPLE_RATE * 3 / 2));
+		assertFalse(renderer.isEnded());
+		assertEquals(500000, renderer.getPosition());
+	}
+
+	@Test
+	public void seekingReplaysProgramChanges() throws IOException {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		renderer.setSequence(createSequence());
+		renderer.setPosition(600000);
+		assertEquals(10, renderer.getProgram(0));
+		// notes are not replayed
+		assertEquals(0, renderer.getActiveVoices());
+		assertEquals(600000, renderer.getPosition());
+
+		renderer.setPosition(100000);
+		assertEquals(0, renderer.getProgram(0));
+	}
+
+	@Test
+	public void scheduledMessageStartsAfterDelay() {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		// 10 ms is 80 frames
+		renderer.scheduleMessage(0x90, 60, 100, 10000);
+		float[] buffer = new float[160 * 2];
+		renderer.render(buffer, 160);
+		assertTrue(isSilent(buffer, 0, 80));
+		assertFalse(isSilent(buffer, 80, 160));
+		assertEquals(1, renderer.getActiveVoices());
+	}
+
+	@Test
+	public void volumeIsApplied() {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		renderer.setVolume(1.0f, 0.0f);
+		renderer.shortMessage(0x90, 60, 100);
+		float[] buffer = new float[400 * 2];
+		renderer.render(buffer, 400);
+		boolean left = false;
+		for (int i = 0; i < buffer.length; i += 2) {
+			left |= buffer[i] != 0.0f;
+			assertEquals(0.0f, buffer[i + 1], 0.0f);
+		}
+		assertTrue(left);
+	}
+
+	private static float[] render(Sequence sequence, int frames) {
+		Renderer renderer = new Renderer(SAMPLE_RATE);
+		renderer.setSequence(sequence);
+		float[] buffer = new float[frames * 2];
+		// uneven blocks, as the audio thread may use
+		for (int done = 0; done < frames; ) {
+			int count = Math.min(333, frames - done);
+			float[] block = new float[count * 2];
+			renderer.render(block, count);
+			System.arraycopy(block, 0, buffer, done * 2, count * 2);
+			done += count;
+		}
+		return buffer;
+	}
+
+	private static boolean isSilent(float[] buffer, int from, int to) {
+		for (int i = from * 2; i < to * 2; i++) {
+			if (buffer[i] != 0.0f) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.media.synth;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SequenceTest {
+
+	@Test
+	public void timesFollowTempoChanges() throws IOException {
+		byte[] data = new MidiFile(0, 96).track(new MidiFile.Track()
+				.event(0, 0x90, 60, 100)
+				.event(96, 0x80, 60, 0)
+				.tempo(0, 250000)
+				.event(96, 0x90, 62, 100)
+				.end(96)).toByteArray();
+		Sequence sequence = Sequence.parse(data);
+
+		assertEquals(3, sequence.getEventCount());
+		assertArrayEquals(new long[]{0, 500000, 750000}, times(sequence));
+		assertEquals(0x90 | 60 << 8 | 100 << 16, sequence.messages[0]);
+		assertEquals(0x80 | 60 << 8, sequence.messages[1]);
+		assertEquals(1000000, sequence.getDuration());
+	}
+
+	@Test
+	public void tracksAreMergedInOrder() throws IOException {
+		byte[] data = new MidiFile(1, 480)
+				.track(new MidiFile.Track().tempo(0, 1000000).end(960))
+				.track(new MidiFile.Track()
+						.event(480, 0xC0, 5)
+						.event(0, 0x90, 60, 100)
+						.end(0))
+				.track(new MidiFile.Track()
+						.event(0, 0xC1, 7)
+						.event(480, 0x91, 64, 100)
+						.end(0))
+				.toByteArray();
+		Sequence sequence = Sequence.parse(data);
+
+		assertArrayEquals(new long[]{0, 1000000, 1000000, 1000000}, times(sequence));
+		assertEquals(0xC1 | 7 << 8, sequence.messages[0]);
+		assertEquals(0xC0 | 5 << 8, sequence.messages[1]);
+		assertEquals(0x90 | 60 << 8 | 100 << 16, sequence.messages[2]);
+		assertEquals(0x91 | 64 << 8 | 100 << 16, sequence.messages[3]);
+		// the conductor track is the longest
+		assertEquals(2000000, sequence.getDuration());
+	}
+
+	@Test
+	public void runningStatusAndSkippedEvents() throws IOException {
+		byte[] data = new MidiFile(0, 96).track(new MidiFile.Track()
+				.event(0, 0x90, 60, 100)
+				.event(0, 62, 90)
+				.event(0, 0xF0, 0x03, 0x43, 0x10, 0xF7)
+				.event(0, 0xFF, 0x03, 0x02, 'h', 'i')
+				.event(48, 64, 80)
+				.end(0)).toByteArray();
+		Sequence sequence = Sequence.parse(data);
+
+		assertEquals(3, sequence.getEventCount());
+		assertEquals(0x90 | 62 << 8 | 90 << 16, sequence.messages[1]);
+		assertEquals(0x90 | 64 << 8 | 80 << 16, sequence.messages[2]);
+		assertEquals(250000, sequence.times[2]);
+	}
+
+	@Test
+	public void smpteDivision() throws IOException {
+		// 25 frames per second, 40 ticks per frame
+		int division = -25 << 8 | 40;
+		byte[] data = new MidiFile(0, division).track(new MidiFile.Track()
+				.event(500, 0x90, 60, 100)
+				.end(500)).toByteArray();
+		Sequence sequence = Sequence.parse(data);
+
+		assertEquals(500000, sequence.times[0]);
+		assertEquals(1000000, sequence.getDuration());
+	}
+
+	@Test(expected = IOException.class)
+	public void notMidi() throws IOException {
+		Sequence.parse(new byte[]{'R', 'I', 'F', 'F', 0, 0, 0, 0});
+	}
+
+	@Test(expected = IOException.class)
+	public void unsupportedFormat() throws IOException {
+		Sequence.parse(new MidiFile(2, 96).track(new MidiFile.Track().end(0)).toByteArray());
+	}
+
+	private static long[] times(Sequence sequence) {
+		long[] times = new long[sequence.size];
+		System.arraycopy(sequence.times, 0, times, 0, sequence.size);
+		return times;
+	}
+}
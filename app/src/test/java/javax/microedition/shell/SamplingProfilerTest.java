@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SamplingProfilerTest {
+
+	@Test
+	public void foldsFromRoot() {
+		StackTraceElement[] trace = {
+				new StackTraceElement("game.Canvas", "paint", null, 10),
+				new StackTraceElement("game.Main", "run", null, 20),
+				new StackTraceElement("java.lang.Thread", "run", null, 30),
+		};
+		assertEquals("Thread;java.lang.Thread.run;game.Main.run;game.Canvas.paint",
+				fold("Thread-12", trace));
+	}
+
+	@Test
+	public void separatorsAreReplaced() {
+		StackTraceElement[] trace = {new StackTraceElement("a;b", "c d", null, 1)};
+		assertEquals("MIDlet_Timer;a_b.c_d", fold("MIDlet Timer", trace));
+	}
+
+	@Test
+	public void deepStackKeepsRootFrames() {
+		StackTraceElement[] trace = new StackTraceElement[100];
+		for (int i = 0; i < trace.length; i++) {
+			// the root is the last element
+			trace[i] = new StackTraceElement("C", "m" + (trace.length - 1 - i), null, i);
+		}
+		String folded = fold("main", trace);
+		String[] frames = folded.split(";");
+		assertEquals("main", frames[0]);
+		assertEquals("C.m0", frames[1]);
+		assertEquals("C.m63", frames[64]);
+		assertEquals(SamplingProfiler.TRUNCATED, frames[65]);
+		assertEquals(66, frames.length);
+	}
+
+	@Test
+	public void stackAtLimitIsNotMarked() {
+		StackTraceElement[] trace = new StackTraceElement[64];
+		for (int i = 0; i < trace.length; i++) {
+			trace[i] = new StackTraceElement("C", "m", null, i);
+		}
+		assertFalse(fold("main", trace).endsWith(SamplingProfiler.TRUNCATED));
+	}
+
+	@Test
+	public void threadKind() {
+		assertEquals("Thread", SamplingProfiler.getKind("Thread-7"));
+		assertEquals("game.Loader", SamplingProfiler.getKind("game.Loader-123"));
+		assertEquals("MIDletTimer", SamplingProfiler.getKind("MIDletTimer"));
+		assertEquals("Player2", SamplingProfiler.getKind("Player2"));
+		assertEquals("-5", SamplingProfiler.getKind("-5"));
+	}
+
+	private static String fold(String threadName, StackTraceElement[] trace) {
+		StringBuilder sb = new StringBuilder();
+		SamplingProfiler.fold(sb, threadName, trace);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell.custom;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the default mode, without the {@code thread.managed} property,
+ * and the limit of running threads.
+ */
+public class ManagedThreadTest {
+
+	@BeforeClass
+	public static void setUpClock() {
+		ManagedThread.cpuClock = new ManagedThread.CpuClock() {
+			@Override
+			public int myTid() {
+				// not a thread of this process, getCpuTime() of the others returns -1
+				return Integer.MAX_VALUE - (int) Thread.currentThread().getId();
+			}
+
+			@Override
+			public long threadCpuTimeNanos() {
+				return 1000000;
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		ManagedThread.maxRunning = 0;
+	}
+
+	@Test
+	public void runsTarget() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		ManagedThread thread = new ManagedThread(runs::incrementAndGet);
+		thread.start();
+		thread.join();
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	public void subclassCallsTarget() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		// a converted subclass: run() became run$(), super.run() became runTarget()
+		ManagedThread thread = new ManagedThread(runs::incrementAndGet, "worker") {
+			@Override
+			protected void run$() {
+				runs.addAndGet(10);
+				runTarget();
+			}
+		};
+		thread.start();
+		thread.join();
+		assertEquals(11, runs.get());
+		assertEquals("worker", thread.getName());
+	}
+
+	@Test
+	public void runCalledDirectly() {
+		AtomicInteger runs = new AtomicInteger();
+		ManagedThread thread = new ManagedThread(runs::incrementAndGet);
+		thread.run();
+		thread.run();
+		assertEquals(2, runs.get());
+		assertFalse(thread.isAlive());
+	}
+
+	@Test
+	public void unnamedThreadsAreNumbered() {
+		assertTrue(new ManagedThread().getName().startsWith("Thread-"));
+		assertEquals("named", new ManagedThread("named").getName());
+	}
+
+	@Test
+	public void runningThreadsAreCounted() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		int created = ManagedThread.getCreatedCount();
+		ManagedThread thread = new ManagedThread(() -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ignored) {
+			}
+		});
+		assertEquals(created + 1, ManagedThread.getCreatedCount());
+		thread.start();
+		started.await();
+		try {
+			thread.start();
+			fail("Started twice");
+		} catch (IllegalThreadStateException ignored) {
+		}
+		assertTrue(ManagedThread.getRunningCount() >= 1);
+		assertTrue(ManagedThread.getPeakCount() >= 1);
+		assertTrue(Arrays.asList(ManagedThread.getThreads()).contains(thread));
+
+		release.countDown();
+		thread.join();
+		assertFalse(Arrays.asList(ManagedThread.getThreads()).contains(thread));
+	}
+
+	@Test
+	public void threadsOverLimitAreQueued() throws InterruptedException {
+		ManagedThread.maxRunning = 1;
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger runs = new AtomicInteger();
+		ManagedThread first = new ManagedThread(() -> await(release));
+		ManagedThread second = new ManagedThread(runs::incrementAndGet);
+		first.start();
+		second.start();
+		assertFalse(second.isAlive());
+		assertEquals(1, ManagedThread.getRunningCount());
+		try {
+			second.start();
+			fail("Started twice");
+		} catch (IllegalThreadStateException ignored) {
+		}
+
+		release.countDown();
+		first.join();
+		// started by the end of the first thread
+		second.join();
+		assertEquals(1, runs.get());
+		assertEquals(1000000, first.getCpuTime());
+	}
+
+	@Test
+	public void queuedThreadsStartAfterUnconvertedRun() throws InterruptedException {
+		ManagedThread.maxRunning = 1;
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger runs = new AtomicInteger();
+		// a subclass of a subclass, its run() is not renamed and skips ManagedThread.run()
+		ManagedThread first = new ManagedThread() {
+			@Override
+			public void run() {
+				await(release);
+			}
+		};
+		ManagedThread second = new ManagedThread(runs::incrementAndGet);
+		first.start();
+		second.start();
+		assertFalse(second.isAlive());
+
+		release.countDown();
+		first.join();
+		assertEquals(0, runs.get());
+		// the count starts it, join() returns at once if it is still queued
+		ManagedThread.getRunningCount();
+		second.join();
+		assertEquals(1, runs.get());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException ignored) {
+		}
+	}
+}
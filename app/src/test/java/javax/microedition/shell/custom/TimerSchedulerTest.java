@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.shell.custom;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives the timing wheel by hand, due tasks run on the calling thread.
+ */
+public class TimerSchedulerTest {
+	private static final long START = 1000;
+
+	private TimerScheduler scheduler;
+	private TimerScheduler.Queue queue;
+	private final List<Long> runs = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		scheduler = new TimerScheduler(Runnable::run, START);
+		queue = new TimerScheduler.Queue(scheduler);
+	}
+
+	@Test
+	public void runsAtDueTime() {
+		Task task = schedule(queue, 5, -1, false);
+		scheduler.advanceTo(START + 4);
+		assertEquals(0, task.count);
+		scheduler.advanceTo(START + 5);
+		assertEquals(1, task.count);
+		scheduler.advanceTo(START + 1000);
+		assertEquals(1, task.count);
+	}
+
+	@Test
+	public void cascadesThroughAllLevels() {
+		// level 0, 1, 2 and 3 of the wheel and the overflow list
+		long[] delays = {63, 64 * 3 + 7, 4096 * 5 + 100, 262144 * 7 + 12345, 16777216L * 2 + 1};
+		for (long delay : delays) {
+			Task task = schedule(queue, delay, -1, false);
+			scheduler.advanceTo(START + delay - 1);
+			assertEquals("delay " + delay, 0, task.count);
+			scheduler.advanceTo(START + delay);
+			assertEquals("delay " + delay, 1, task.count);
+			setUp();
+		}
+	}
+
+	@Test
+	public void tasksRunInOrderOfTime() {
+		Random random = new Random(43);
+		List<Long> expected = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			long delay = 1 + random.nextInt(10000000);
+			if (expected.contains(delay)) {
+				continue;
+			}
+			expected.add(delay);
+			schedule(queue, delay, -1, false);
+		}
+		Collections.sort(expected);
+		scheduler.advanceTo(START + 10000000);
+		assertEquals(expected.size(), runs.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(START + expected.get(i), (long) runs.get(i));
+		}
+	}
+
+	@Test
+	public void fixedRateCatchesUp() {
+		Task task = schedule(queue, 10, 10, true);
+		scheduler.advanceTo(START + 100);
+		assertEquals(10, task.count);
+		scheduler.advanceTo(START + 109);
+		assertEquals(10, task.count);
+		scheduler.advanceTo(START + 110);
+		assertEquals(11, task.count);
+	}
+
+	@Test
+	public void fixedDelayCountsFromStart() {
+		Task task = schedule(queue, 10, 10, false);
+		scheduler.advanceTo(START + 100);
+		assertEquals(1, task.count);
+		scheduler.advanceTo(START + 109);
+		assertEquals(1, task.count);
+		scheduler.advanceTo(START + 110);
+		assertEquals(2, task.count);
+	}
+
+	@Test
+	public void cancelledTaskDoesNotRun() {
+		Task once = schedule(queue, 100, -1, false);
+		Task repeating = schedule(queue, 10, 10, true);
+		assertTrue(once.cancel());
+		scheduler.advanceTo(START + 35);
+		assertEquals(3, repeating.count);
+		repeating.cancel();
+		scheduler.advanceTo(START + 1000);
+		assertEquals(0, once.count);
+		assertEquals(3, repeating.count);
+	}
+
+	@Test
+	public void taskCancelsItself() {
+		Task task = new Task() {
+			@Override
+			public void run() {
+				super.run();
+				if (count == 2) {
+					cancel();
+				}
+			}
+		};
+		schedule(queue, task, 10, 10, true);
+		scheduler.advanceTo(START + 1000);
+		assertEquals(2, task.count);
+	}
+
+	@Test
+	public void cancelledTimerDropsItsTasks() {
+		TimerScheduler.Queue other = new TimerScheduler.Queue(scheduler);
+		Task task = schedule(queue, 5000, -1, false);
+		Task otherTask = schedule(other, 5000, -1, false);
+		scheduler.cancel(queue);
+		Task late = schedule(queue, 10, -1, false);
+		scheduler.advanceTo(START + 10000);
+		assertEquals(0, task.count);
+		assertEquals(0, late.count);
+		assertEquals(1, otherTask.count);
+	}
+
+	@Test
+	public void errorCancelsTimer() {
+		List<Runnable> pending = new ArrayList<>();
+		scheduler = new TimerScheduler(pending::add, START);
+		queue = new TimerScheduler.Queue(scheduler);
+		Task failing = new Task() {
+			@Override
+			public void run() {
+				super.run();
+				throw new AssertionError("task failed");
+			}
+		};
+		schedule(queue, failing, 5, -1, false);
+		Task next = schedule(queue, 6, -1, false);
+		scheduler.advanceTo(START + 6);
+		assertEquals(1, pending.size());
+		try {
+			pending.remove(0).run();
+			fail("Error is not thrown");
+		} catch (AssertionError e) {
+			assertEquals("task failed", e.getMessage());
+		}
+		assertTrue(queue.cancelled);
+		assertEquals(0, next.count);
+
+		// nothing is queued for the cancelled timer anymore
+		schedule(queue, 10, -1, false);
+		scheduler.advanceTo(START + 100);
+		assertTrue(pending.isEmpty());
+	}
+
+	@Test
+	public void purgeRemovesCancelledTasks() {
+		TimerScheduler.Queue other = new TimerScheduler.Queue(scheduler);
+		Task a = schedule(queue, 50, -1, false);
+		Task b = schedule(queue, 5000, -1, false);
+		Task c = schedule(queue, 500000, 100, true);
+		Task otherTask = schedule(other, 5000, -1, false);
+		a.cancel();
+		c.cancel();
+		otherTask.cancel();
+		assertEquals(2, scheduler.purge(queue));
+		assertEquals(0, scheduler.purge(queue));
+		assertEquals(1, scheduler.purge(other));
+		scheduler.advanceTo(START + 1000000);
+		assertEquals(1, b.count);
+		assertEquals(0, a.count + c.count + otherTask.count);
+	}
+
+	private Task schedule(TimerScheduler.Queue queue, long delay, long period, boolean fixedRate) {
+		Task task = new Task();
+		schedule(queue, task, delay, period, fixedRate);
+		return task;
+	}
+
+	private void schedule(TimerScheduler.Queue queue, Task task, long delay, long period, boolean fixedRate) {
+		synchronized (task.lock) {
+			task.when = scheduler.time() + delay;
+			task.due = task.when;
+			task.period = period;
+			task.fixedRate = fixedRate;
+		}
+		scheduler.schedule(queue, task);
+	}
+
+	private class Task extends TimerTask {
+		int count;
+		long due;
+
+		@Override
+		public void run() {
+			count++;
+			runs.add(due);
+		}
+	}
+}
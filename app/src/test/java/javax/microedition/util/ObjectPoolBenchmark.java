@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares {@link ObjectPool} with the synchronized {@link ArrayStack} the events were
+ * recycled into before: producer threads obtain events and post them, one consumer
+ * thread takes them and recycles them, like the UI threads and the event thread.
+ * <p>
+ * Not a unit test, run {@link #main(String[])} on a host JVM with the number of
+ * producers, the events per producer and the limit of posted events that are not
+ * recycled yet as optional arguments. A pool drops the events recycled over its capacity,
+ * so bursts larger than that are allocated again.
+ */
+public class ObjectPoolBenchmark {
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws InterruptedException {
+		int producers = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int events = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+		int inFlight = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+		System.out.println(producers + " producers, " + events + " events each, "
+				+ inFlight + " in flight, " + Runtime.getRuntime().availableProcessors() + " CPUs");
+		for (int round = 1; round <= ROUNDS; round++) {
+			// the first rounds warm up the JIT
+			System.out.println("round " + round + ":");
+			report("ObjectPool", new PoolAdapter(new ObjectPool<>(64)), producers, events, inFlight);
+			report("ArrayStack", new StackAdapter(new ArrayStack<>()), producers, events, inFlight);
+			report("allocation", new NoPool(), producers, events, inFlight);
+		}
+	}
+
+	private static void report(String name, Pool pool, int producers, int events, int maxInFlight)
+			throws InterruptedException {
+		AtomicLong misses = new AtomicLong();
+		long nanos = run(pool, producers, events, maxInFlight, misses);
+		long total = (long) producers * events;
+		System.out.printf("  %-10s %7.1f ns/op, %5.2f%% allocated%n",
+				name, (double) nanos / total, misses.get() * 100.0 / total);
+	}
+
+	private static long run(Pool pool, int producers, int events, int maxInFlight,
+			AtomicLong misses) throws InterruptedException {
+		ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+		AtomicInteger inFlight = new AtomicInteger();
+		long total = (long) producers * events;
+		Thread consumer = new Thread(() -> {
+			for (long consumed = 0; consumed < total; ) {
+				Object event = queue.poll();
+				if (event == null) {
+					Thread.yield();
+					continue;
+				}
+				inFlight.decrementAndGet();
+				pool.recycle(event);
+				consumed++;
+			}
+		}, "consumer");
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; i++) {
+			threads[i] = new Thread(() -> {
+				long allocated = 0;
+				for (int n = 0; n < events; n++) {
+					while (inFlight.get() >= maxInFlight) {
+						Thread.yield();
+					}
+					Object event = pool.obtain();
+					if (event == null) {
+						event = new Object();
+						allocated++;
+					}
+					inFlight.incrementAndGet();
+					queue.offer(event);
+				}
+				misses.addAndGet(allocated);
+			}, "producer-" + i);
+		}
+		long start = System.nanoTime();
+		consumer.start();
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		consumer.join();
+		return System.nanoTime() - start;
+	}
+
+	private interface Pool {
+		Object obtain();
+
+		void recycle(Object value);
+	}
+
+	private static class PoolAdapter implements Pool {
+		private final ObjectPool<Object> pool;
+
+		PoolAdapter(ObjectPool<Object> pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public Object obtain() {
+			return pool.obtain();
+		}
+
+		@Override
+		public void recycle(Object value) {
+			pool.recycle(value);
+		}
+	}
+
+	private static class StackAdapter implements Pool {
+		private final ArrayStack<Object> stack;
+
+		StackAdapter(ArrayStack<Object> stack) {
+			this.stack = stack;
+		}
+
+		@Override
+		public Object obtain() {
+			return stack.pop();
+		}
+
+		@Override
+		public void recycle(Object value) {
+			stack.push(value);
+		}
+	}
+
+	private static class NoPool implements Pool {
+		@Override
+		public Object obtain() {
+			return null;
+		}
+
+		@Override
+		public void recycle(Object value) {
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Nikita Shakarun
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package javax.microedition.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ObjectPoolTest {
+	/** Size of the cache of each thread */
+	private static final int LOCAL_SIZE = 8;
+
+	@Test
+	public void emptyPool() {
+		assertNull(new ObjectPool<Object>(4).obtain());
+	}
+
+	@Test
+	public void recycledObjectIsReused() {
+		ObjectPool<Object> pool = new ObjectPool<>(4);
+		Object first = new Object();
+		Object second = new Object();
+		pool.recycle(first);
+		pool.recycle(second);
+		assertSame(second, pool.obtain());
+		assertSame(first, pool.obtain());
+		assertNull(pool.obtain());
+	}
+
+	@Test
+	public void fullPoolDropsObjects() {
+		// 3 is rounded up to 4 shared slots
+		ObjectPool<Object> pool = new ObjectPool<>(3);
+		for (int i = 0; i < 100; i++) {
+			pool.recycle(new Object());
+		}
+		Set<Object> obtained = Collections.newSetFromMap(new IdentityHashMap<>());
+		Object value;
+		while ((value = pool.obtain()) != null) {
+			assertTrue(obtained.add(value));
+		}
+		assertEquals(LOCAL_SIZE + 4, obtained.size());
+	}
+
+	@Test
+	public void sharedSlotsServeOtherThreads() throws InterruptedException {
+		ObjectPool<Object> pool = new ObjectPool<>(16);
+		for (int i = 0; i < LOCAL_SIZE + 5; i++) {
+			pool.recycle(new Object());
+		}
+		AtomicInteger count = new AtomicInteger();
+		Thread thread = new Thread(() -> {
+			while (pool.obtain() != null) {
+				count.incrementAndGet();
+			}
+		});
+		thread.start();
+		thread.join();
+		// the cache of the recycling thread is not shared
+		assertEquals(5, count.get());
+	}
+
+	@Test
+	public void objectIsNeverHandedOutTwice() throws InterruptedException {
+		ObjectPool<Item> pool = new ObjectPool<>(8);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				List<Item> held = new ArrayList<>();
+				try {
+					for (int i = 0; i < 200000; i++) {
+						// obtain a few, recycle them in a different order
+						for (int n = i % 13; n >= 0; n--) {
+							Item item = pool.obtain();
+							if (item == null) {
+								item = new Item();
+							}
+							if (!item.inUse.compareAndSet(false, true)) {
+								throw new AssertionError("Item obtained twice");
+							}
+							held.add(item);
+						}
+						Collections.reverse(held);
+						for (Item item : held) {
+							item.inUse.set(false);
+							pool.recycle(item);
+						}
+						held.clear();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+	private static final class Item {
+		final AtomicBoolean inUse = new AtomicBoolean();
+	}
+}
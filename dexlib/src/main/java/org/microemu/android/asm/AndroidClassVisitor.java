@@ -34,6 +34,7 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
 public class AndroidClassVisitor extends ClassVisitor {
+	private boolean threadSubclass;
 
 	AndroidClassVisitor(ClassVisitor cv) {
 		super(Opcodes.ASM9, cv);
@@ -42,12 +43,20 @@ public class AndroidClassVisitor extends ClassVisitor {
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
 		desc = desc.replace("java/util/Timer", "javax/microedition/shell/custom/Timer");
+		if (threadSubclass && name.equals("run") && desc.equals("()V")) {
+			// called by ManagedThread.run(), which keeps track of the thread
+			name = "run$";
+		}
 		return new AndroidMethodVisitor(super.visitMethod(access, name, desc, signature, exceptions));
 	}
 
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 		superName = superName.replace("java/util/Timer", "javax/microedition/shell/custom/Timer");
+		if (superName.equals("java/lang/Thread")) {
+			threadSubclass = true;
+			superName = "javax/microedition/shell/custom/ManagedThread";
+		}
 		super.visit(version, access, name, signature, superName, interfaces);
 	}
 
@@ -67,6 +67,15 @@ public class AndroidMethodVisitor extends MethodVisitor {
 					mv.visitLdcInsn(1L);
 					mv.visitMethodInsn(opcode, owner, "sleep", "(J)V", false);
 					return;
+				} else if (opcode == INVOKESTATIC && name.equals("sleep") && desc.equals("(J)V")) {
+					mv.visitMethodInsn(opcode, "javax/microedition/shell/FramePacer", name, desc, false);
+					return;
+				} else if (name.equals("<init>")) {
+					owner = "javax/microedition/shell/custom/ManagedThread";
+				} else if (opcode == INVOKESPECIAL && name.equals("run") && desc.equals("()V")) {
+					mv.visitMethodInsn(opcode, "javax/microedition/shell/custom/ManagedThread",
+							"runTarget", desc, false);
+					return;
 				}
 				break;
 			case "java/lang/String":
@@ -153,6 +162,9 @@ public class AndroidMethodVisitor extends MethodVisitor {
 	@Override
 	public void visitTypeInsn(int opcode, String type) {
 		type = type.replace("java/util/Timer", "javax/microedition/shell/custom/Timer");
+		if (opcode == NEW && type.equals("java/lang/Thread")) {
+			type = "javax/microedition/shell/custom/ManagedThread";
+		}
 		super.visitTypeInsn(opcode, type);
 	}
 